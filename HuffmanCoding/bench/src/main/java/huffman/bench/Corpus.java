@@ -0,0 +1,107 @@
+package huffman.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+
+/**
+ * This class resolves the corpus named by a benchmark parameter to a file on disk.
+ * Names ending in .txt are the inputs bundled with the project. Names of the form
+ * size:entropy, like 64MB:text, are synthetic corpora generated once into the
+ * temporary directory and reused by later runs.
+ *
+ * Entropy levels: low is a few symbols with very skewed frequencies (about 1 bit
+ * per byte), text follows English letter frequencies (about 4.5 bits per byte),
+ * and high is uniformly random bytes (8 bits per byte).
+ */
+public class Corpus {
+    // Where the bundled inputs live, the HuffmanCoding folder by default
+    private static final String INPUT_DIR = System.getProperty("huffman.inputs", "..");
+
+    private static final String TEXT_SYMBOLS = " etaoinshrdlcumwfgypbvkjxqz\n,.";
+    private static final int[] TEXT_WEIGHTS = {
+        180, 102, 74, 65, 62, 57, 55, 51, 50, 49, 34, 32, 22, 22, 20, 19, 18, 16, 16, 15, 12, 8, 6, 1, 1, 1, 1, 18, 10, 10
+    };
+
+    public final String name;
+    public final File file;
+
+    // true when the corpus must be read as raw bytes rather than ASCII text
+    public final boolean byteMode;
+
+    private Corpus(String name, File file, boolean byteMode) {
+        this.name = name;
+        this.file = file;
+        this.byteMode = byteMode;
+    }
+
+    public long size() { return file.length(); }
+
+    public static Corpus resolve(String name) throws IOException {
+        if (name.endsWith(".txt")) {
+            return new Corpus(name, new File(INPUT_DIR, name), false);
+        }
+
+        String[] parts = name.split(":");
+        if (parts.length != 2) throw new IllegalArgumentException("Corpus must be a file or size:entropy, got " + name);
+        long size = parseSize(parts[0]);
+        String entropy = parts[1];
+
+        File file = new File(System.getProperty("java.io.tmpdir"), "huffman-corpus-" + parts[0] + "-" + entropy + ".bin");
+        if (!file.exists() || file.length() != size) {
+            generate(file, size, entropy);
+        }
+        return new Corpus(name, file, !entropy.equals("text"));
+    }
+
+    private static long parseSize(String size) {
+        String s = size.toUpperCase();
+        if (s.endsWith("GB")) return Long.parseLong(s.substring(0, s.length() - 2)) << 30;
+        if (s.endsWith("MB")) return Long.parseLong(s.substring(0, s.length() - 2)) << 20;
+        if (s.endsWith("KB")) return Long.parseLong(s.substring(0, s.length() - 2)) << 10;
+        return Long.parseLong(s);
+    }
+
+    private static void generate(File file, long size, String entropy) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        byte[] block = new byte[1 << 16];
+
+        // Cumulative weights for the text alphabet, so a symbol is one search away
+        int[] cumulative = new int[TEXT_WEIGHTS.length];
+        int total = 0;
+        for (int i = 0; i < TEXT_WEIGHTS.length; i++) {
+            total += TEXT_WEIGHTS[i];
+            cumulative[i] = total;
+        }
+
+        File partial = new File(file.getPath() + ".part");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial))) {
+            for (long written = 0; written < size; written += block.length) {
+                for (int i = 0; i < block.length; i++) {
+                    switch (entropy) {
+                        case "low":
+                            // Geometric over 8 symbols: half are 'a', a quarter 'b', ...
+                            block[i] = (byte) ('a' + Math.min(7, Long.numberOfTrailingZeros(random.nextLong() | 0x80)));
+                            break;
+                        case "text":
+                            int r = random.nextInt(total);
+                            int s = 0;
+                            while (cumulative[s] <= r) s++;
+                            block[i] = (byte) TEXT_SYMBOLS.charAt(s);
+                            break;
+                        case "high":
+                            block[i] = (byte) random.nextInt(256);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Entropy must be low, text or high, got " + entropy);
+                    }
+                }
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        if (!partial.renameTo(file)) throw new IOException("Could not create " + file);
+    }
+}
@@ -0,0 +1,147 @@
+package huffman.bench;
+
+import huffman.HuffmanCoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks every step of the Huffman Coding pipeline on one corpus. Each step
+ * runs on a HuffmanCoding that has already done the steps before it, so the score
+ * is the cost of that step alone. Besides ops/s, every benchmark reports a
+ * megabytes counter, which is the step's throughput in MB/s of original input.
+ * Run with -prof gc (BenchmarkRunner adds it) to see allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    // Small and medium corpora only, so a default run finishes in minutes. The large
+    // ones are opt-in, for example -p corpus=64MB:text,1GB:text
+    @Param({
+        "input1.txt", "input2.txt", "input3.txt", "input4.txt", "input5.txt", "input6.txt",
+        "1MB:low", "1MB:text", "1MB:high"
+    })
+    public String corpus;
+
+    private Corpus input;
+    private File encoded;
+    private File interleaved;
+    private File decoded;
+
+    // One instance per step, each prepared up to the step before it
+    private HuffmanCoding sorted;
+    private HuffmanCoding tree;
+    private HuffmanCoding encodings;
+
+    /**
+     * Counts megabytes of original input handled, reported by JMH as MB/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = Corpus.resolve(corpus);
+        encoded = File.createTempFile("huffman-bench", ".enc");
+        interleaved = File.createTempFile("huffman-bench", ".int");
+        decoded = File.createTempFile("huffman-bench", ".dec");
+
+        sorted = newCoding();
+        sorted.makeSortedList();
+
+        tree = newCoding();
+        tree.makeSortedList();
+        tree.makeTree();
+
+        encodings = newCoding();
+        encodings.makeSortedList();
+        encodings.makeTree();
+        encodings.makeEncodings();
+        encodings.encode(encoded.getPath());
+        encodings.encodeInterleaved(interleaved.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        encoded.delete();
+        interleaved.delete();
+        decoded.delete();
+    }
+
+    private HuffmanCoding newCoding() {
+        return new HuffmanCoding(input.file.getPath(), input.byteMode);
+    }
+
+    private void count(Throughput throughput) {
+        throughput.megabytes += input.size() / (1024.0 * 1024.0);
+    }
+
+    @Benchmark
+    public Object makeSortedList(Throughput throughput) {
+        HuffmanCoding coding = newCoding();
+        coding.makeSortedList();
+        count(throughput);
+        return coding.getSortedCharFreqList();
+    }
+
+    @Benchmark
+    public Object makeTree(Throughput throughput) {
+        sorted.makeTree();
+        count(throughput);
+        return sorted.getHuffmanRoot();
+    }
+
+    @Benchmark
+    public Object makeEncodings(Throughput throughput) {
+        tree.makeEncodings();
+        count(throughput);
+        return tree.getCodeTable();
+    }
+
+    @Benchmark
+    public void encode(Throughput throughput) {
+        encodings.encode(encoded.getPath());
+        count(throughput);
+    }
+
+    @Benchmark
+    public void decode(Throughput throughput) {
+        encodings.decode(encoded.getPath(), decoded.getPath());
+        count(throughput);
+    }
+
+    @Benchmark
+    public void encodeInterleaved(Throughput throughput) {
+        encodings.encodeInterleaved(interleaved.getPath());
+        count(throughput);
+    }
+
+    @Benchmark
+    public void decodeInterleaved(Throughput throughput) {
+        encodings.decode(interleaved.getPath(), decoded.getPath());
+        count(throughput);
+    }
+}
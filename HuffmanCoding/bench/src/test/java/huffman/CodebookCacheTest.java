@@ -0,0 +1,81 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reuse, training and eviction in CodebookCache, checked through its hit, miss and
+ * eviction counters.
+ */
+class CodebookCacheTest {
+    private static final double MAX_OVERHEAD = 0.1;
+
+    // Sixteen equally common byte values starting at first, nothing else
+    private static long[] block(int first, long count) {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        for (int b = first; b < first + 16; b++) counts[b] = count;
+        return counts;
+    }
+
+    @Test
+    void sameHistogramHits() {
+        CodebookCache cache = new CodebookCache(4, MAX_OVERHEAD);
+        Codebook first = cache.get(block(0, 1000));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+
+        assertSame(first, cache.get(block(0, 1000)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void similarHistogramReusesCodebook() {
+        CodebookCache cache = new CodebookCache(4, MAX_OVERHEAD);
+        Codebook first = cache.get(block(0, 1000));
+        long[] similar = block(0, 1000);
+        similar[3] = 1300;
+        similar[9] = 800;
+
+        assertSame(first, cache.get(similar));
+        assertEquals(1, cache.getHits());
+        assertTrue(CodebookCache.extraCost(first, similar) <= MAX_OVERHEAD);
+    }
+
+    @Test
+    void differentHistogramTrainsNewCodebook() {
+        CodebookCache cache = new CodebookCache(4, MAX_OVERHEAD);
+        Codebook first = cache.get(block(0, 1000));
+        long[] other = block(64, 1000);
+        assertTrue(CodebookCache.extraCost(first, other) > MAX_OVERHEAD);
+
+        assertNotSame(first, cache.get(other));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        CodebookCache cache = new CodebookCache(2, MAX_OVERHEAD);
+        Codebook a = cache.get(block(0, 1000));
+        cache.get(block(64, 1000));
+        assertSame(a, cache.get(block(0, 1000)));
+
+        // b is now the least recently used, so c pushes it out
+        cache.get(block(128, 1000));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+
+        assertSame(a, cache.get(block(0, 1000)));
+        long misses = cache.getMisses();
+        cache.get(block(64, 1000));
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+    }
+}
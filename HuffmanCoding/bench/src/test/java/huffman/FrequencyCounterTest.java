@@ -0,0 +1,51 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Counting files, and failing loudly on files that can't be read instead of
+ * counting them as empty.
+ */
+class FrequencyCounterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsChars() throws Exception {
+        Path file = Files.write(dir.resolve("input"), "abracadabra".getBytes(StandardCharsets.UTF_8));
+        long[] counts = FrequencyCounter.countChars(file.toString());
+        assertEquals(FrequencyCounter.CHAR_ALPHABET, counts.length);
+        assertEquals(5, counts['a']);
+        assertEquals(2, counts['b']);
+        assertEquals(1, counts['d']);
+    }
+
+    @Test
+    void countsBytes() throws Exception {
+        Path file = Files.write(dir.resolve("input"), new byte[] { 0, (byte) 0xFF, (byte) 0xFF, 7 });
+        long[] counts = FrequencyCounter.countBytes(file.toString());
+        assertEquals(FrequencyCounter.BYTE_ALPHABET, counts.length);
+        assertEquals(1, counts[0]);
+        assertEquals(2, counts[0xFF]);
+        assertEquals(1, counts[7]);
+    }
+
+    @Test
+    void missingFileThrows() {
+        String missing = dir.resolve("missing").toString();
+        assertThrows(UncheckedIOException.class, () -> FrequencyCounter.countChars(missing));
+        assertThrows(UncheckedIOException.class, () -> new HuffmanCoding(missing).makeSortedList());
+        assertThrows(UncheckedIOException.class, () -> FrequencyCounter.countBytes(missing));
+        assertThrows(UncheckedIOException.class, () -> new HuffmanCoding(missing, true).makeSortedList());
+        assertThrows(UncheckedIOException.class, () -> Codebook.train(missing));
+    }
+}
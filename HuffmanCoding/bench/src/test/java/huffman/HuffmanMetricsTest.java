@@ -0,0 +1,83 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The counters every pipeline step records, and registering them as an MBean on
+ * demand.
+ */
+class HuffmanMetricsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void registersOnlyOnDemand() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(HuffmanMetrics.OBJECT_NAME);
+        HuffmanMetrics.unregister();
+
+        // Using the counters doesn't register anything
+        HuffmanMetrics.get().recordSymbolsCounted(1);
+        assertFalse(server.isRegistered(name));
+
+        assertTrue(HuffmanMetrics.register());
+        assertFalse(HuffmanMetrics.register());
+        assertTrue(server.isRegistered(name));
+        assertEquals(HuffmanMetrics.get().getSymbolsCounted(), server.getAttribute(name, "SymbolsCounted"));
+
+        assertTrue(HuffmanMetrics.unregister());
+        assertFalse(HuffmanMetrics.unregister());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void pipelineRecordsEveryStage() throws Exception {
+        // a is half the text, b a quarter, c and d an eighth: codes of 1, 2, 3 and 3 bits
+        Path input = Files.write(dir.resolve("input"), "aaaabbcd".getBytes(StandardCharsets.US_ASCII));
+        Path encoded = dir.resolve("encoded");
+        Path decoded = dir.resolve("decoded");
+
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.reset();
+        HuffmanCoding coding = new HuffmanCoding(input.toString());
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        coding.encode(encoded.toString());
+        coding.decode(encoded.toString(), decoded.toString());
+
+        HuffmanMetrics.Snapshot snapshot = metrics.snapshot();
+        int[] stages = { HuffmanMetrics.MAKE_SORTED_LIST, HuffmanMetrics.MAKE_TREE,
+                HuffmanMetrics.MAKE_ENCODINGS, HuffmanMetrics.ENCODE, HuffmanMetrics.DECODE };
+        for (int stage : stages) {
+            assertEquals(1, snapshot.getCalls(stage), "stage " + stage);
+            assertTrue(snapshot.getNanos(stage) > 0, "stage " + stage);
+        }
+        assertEquals(8, snapshot.getSymbolsCounted());
+        assertEquals(8, snapshot.getEncodeBytesIn());
+        assertEquals(Files.size(encoded), snapshot.getEncodeBytesOut());
+        assertEquals(Files.size(encoded), snapshot.getDecodeBytesIn());
+        assertEquals(8, snapshot.getDecodeBytesOut());
+
+        // A dyadic histogram: the code meets the entropy exactly
+        assertEquals(1.75, snapshot.getAverageCodeLength(), 1e-9);
+        assertEquals(1.75, snapshot.getEntropy(), 1e-9);
+        assertEquals(3, snapshot.getTreeDepth());
+
+        coding.makeEncodings(2);
+        assertEquals(2, metrics.getTreeDepth());
+    }
+}
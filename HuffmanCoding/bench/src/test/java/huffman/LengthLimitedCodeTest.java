@@ -0,0 +1,72 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Package-merge codes: the cap holds, the code stays complete, and the cost of the
+ * cap is reported against the unlimited huffman code.
+ */
+class LengthLimitedCodeTest {
+    @TempDir
+    Path dir;
+
+    // Fibonacci counts give the deepest possible tree, one level per symbol
+    private static long[] fibonacci(int symbols) {
+        long[] counts = new long[symbols];
+        counts[0] = 1;
+        counts[1] = 1;
+        for (int i = 2; i < symbols; i++) counts[i] = counts[i - 1] + counts[i - 2];
+        return counts;
+    }
+
+    @Test
+    void capCostsBits() {
+        long[] counts = fibonacci(20);
+        LengthLimitedCode limited = new LengthLimitedCode(counts, 8);
+
+        long kraft = 0;
+        for (int length : limited.getLengths()) {
+            assertTrue(length >= 1 && length <= 8, "length " + length);
+            kraft += 1L << (8 - length);
+        }
+        assertEquals(1L << 8, kraft, "code must be complete");
+
+        long unlimited = CanonicalCode.fromCounts(counts).getCodeTable().totalBits(counts);
+        assertEquals(unlimited, limited.getUnlimitedBits());
+        assertEquals(limited.getCode().getCodeTable().totalBits(counts), limited.getBits());
+        assertTrue(limited.getBits() > unlimited);
+        assertEquals((double) (limited.getBits() - unlimited) / unlimited, limited.getOverhead(), 1e-12);
+    }
+
+    @Test
+    void looseCapCostsNothing() {
+        long[] counts = fibonacci(12);
+        LengthLimitedCode limited = new LengthLimitedCode(counts, 15);
+        assertEquals(limited.getUnlimitedBits(), limited.getBits());
+        assertEquals(0, limited.getOverhead());
+    }
+
+    @Test
+    void capTooShortForAlphabetThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new LengthLimitedCode(fibonacci(9), 3));
+    }
+
+    @Test
+    void nonAsciiTextFailsBothPaths() throws Exception {
+        Path file = Files.write(dir.resolve("input"), "café".getBytes(StandardCharsets.UTF_8));
+        HuffmanCoding coding = new HuffmanCoding(file.toString());
+        coding.makeSortedList();
+        coding.makeTree();
+        assertThrows(IllegalStateException.class, () -> coding.makeEncodings());
+        assertThrows(IllegalStateException.class, () -> coding.makeEncodings(12));
+    }
+}
@@ -0,0 +1,223 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Encodes every input in every format and checks that decoding gives the input
+ * back, byte for byte. The inputs are the bundled input*.txt files (read from ..,
+ * or -Dhuffman.inputs=<dir>), an empty file, a file of one repeated symbol and
+ * random bytes, which are stored rather than coded.
+ */
+class RoundTripTest {
+    private static final String INPUT_DIR = System.getProperty("huffman.inputs", "..");
+
+    // Small blocks, so the larger inputs are split into several
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    static List<Arguments> inputs() throws IOException {
+        List<Arguments> inputs = new ArrayList<Arguments>();
+        for (int i = 1; i <= 6; i++) {
+            String name = "input" + i + ".txt";
+            inputs.add(Arguments.of(name, Files.readAllBytes(Paths.get(INPUT_DIR, name))));
+        }
+        inputs.add(Arguments.of("empty", new byte[0]));
+
+        byte[] single = new byte[1000];
+        Arrays.fill(single, (byte) 'a');
+        inputs.add(Arguments.of("single symbol", single));
+
+        byte[] random = new byte[3 * BLOCK_SIZE + 100];
+        new Random(42).nextBytes(random);
+        inputs.add(Arguments.of("random", random));
+        return inputs;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void canonical(String name, byte[] data) throws IOException {
+        HuffmanCoding coding = prepare(data);
+        Path encoded = dir.resolve("encoded");
+        coding.encode(encoded.toString());
+        boolean stored = HuffmanEncoder.shouldStore(FrequencyCounter.countBytes(data, 0, data.length), data.length);
+        assertFormat(stored ? HuffmanFormat.STORED : HuffmanFormat.CANONICAL, encoded);
+        assertDecodes(data, encoded);
+        assertArrayEquals(data, ByteHuffman.decode(ByteHuffman.encode(data)));
+
+        coding.makeEncodings(12);
+        coding.encode(encoded.toString());
+        assertDecodes(data, encoded);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void blocked(String name, byte[] data) throws IOException {
+        Path encoded = dir.resolve("encoded");
+        prepare(data).encode(encoded.toString(), BLOCK_SIZE);
+        assertFormat(HuffmanFormat.BLOCKED, encoded);
+        assertDecodes(data, encoded);
+
+        try (BlockFileReader reader = new BlockFileReader(encoded.toString())) {
+            assertArrayEquals(data, reader.decode(0, data.length));
+        }
+
+        byte[] parallel = new ParallelEncoder(BLOCK_SIZE).encode(data);
+        assertArrayEquals(data, ByteHuffman.decode(parallel));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void adaptive(String name, byte[] data) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        AdaptiveHuffman.encode(new ByteArrayInputStream(data), encoded);
+        assertArrayEquals(data, ByteHuffman.decode(encoded.toByteArray()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void codebook(String name, byte[] data) throws IOException {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        for (byte b : data) counts[b & 0xFF]++;
+        Path file = dir.resolve("codebook");
+        Codebook.train(counts).save(file.toString());
+        assertFormat(HuffmanFormat.CODEBOOK, file);
+
+        Codebook codebook = Codebook.load(file.toString());
+        assertArrayEquals(data, codebook.decode(codebook.encode(data)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void interleaved(String name, byte[] data) throws IOException {
+        Path encoded = dir.resolve("encoded");
+        prepare(data).encodeInterleaved(encoded.toString());
+        assertDecodes(data, encoded);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void context(String name, byte[] data) throws IOException {
+        Path encoded = dir.resolve("encoded");
+        prepare(data).encodeContext(encoded.toString());
+        assertFormat(HuffmanFormat.CONTEXT, encoded);
+        assertDecodes(data, encoded);
+        assertArrayEquals(data, ByteHuffman.decode(ContextHuffman.encode(data)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void stream(String name, byte[] data) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(encoded, BLOCK_SIZE)) {
+            // Uneven writes, so blocks don't line up with them
+            for (int offset = 0; offset < data.length; offset += 777) {
+                out.write(data, offset, Math.min(777, data.length - offset));
+            }
+        }
+        assertArrayEquals(data, ByteHuffman.decode(encoded.toByteArray()));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded.toByteArray()))) {
+            in.transferTo(decoded);
+        }
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void stored(String name, byte[] data) throws IOException {
+        Path input = write(data);
+        Path encoded = dir.resolve("encoded");
+        HuffmanEncoder.storeFile(input.toString(), encoded.toString());
+        assertFormat(HuffmanFormat.STORED, encoded);
+        assertDecodes(data, encoded);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void legacy(String name, byte[] data) throws IOException {
+        HuffmanCoding coding = prepare(data);
+        StringBuilder bits = new StringBuilder();
+        for (byte b : data) bits.append(coding.getEncodings()[b & 0xFF]);
+        Path encoded = dir.resolve("encoded");
+        HuffmanCoding.writeBitString(encoded.toString(), bits.toString());
+        assertFormat(HuffmanFormat.LEGACY, encoded);
+
+        Path decoded = dir.resolve("decoded");
+        coding.decode(encoded.toString(), decoded.toString());
+        assertArrayEquals(data, Files.readAllBytes(decoded));
+    }
+
+    /**
+     * The headerless files bundled with the project were encoded before the code
+     * lengths were stored; they must still decode, the ones built on tied counts
+     * with the legacy tree.
+     */
+    @Test
+    void bundledHeaderlessFiles() throws IOException {
+        assertBundledDecodes("newInput1.txt", "input1.txt", false);
+        assertBundledDecodes("newInput3.txt", "input3.txt", true);
+        assertBundledDecodes("encoded", "input6.txt", false);
+    }
+
+    private void assertBundledDecodes(String encodedName, String inputName, boolean legacyTree) throws IOException {
+        Path encoded = Paths.get(INPUT_DIR, encodedName);
+        assertFormat(HuffmanFormat.LEGACY, encoded);
+
+        HuffmanCoding coding = new HuffmanCoding(Paths.get(INPUT_DIR, inputName).toString());
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        coding.setLegacyTree(legacyTree);
+        Path decoded = dir.resolve("decoded");
+        coding.decode(encoded.toString(), decoded.toString());
+        assertArrayEquals(Files.readAllBytes(Paths.get(INPUT_DIR, inputName)), Files.readAllBytes(decoded),
+                encodedName);
+    }
+
+    // Writes data to a file and runs it through the pipeline in byte mode
+    private HuffmanCoding prepare(byte[] data) throws IOException {
+        HuffmanCoding coding = new HuffmanCoding(write(data).toString(), true);
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        return coding;
+    }
+
+    private Path write(byte[] data) throws IOException {
+        return Files.write(dir.resolve("input"), data);
+    }
+
+    // Decodes with an instance that never saw the input
+    private void assertDecodes(byte[] data, Path encoded) throws IOException {
+        Path decoded = dir.resolve("decoded");
+        new HuffmanCoding(encoded.toString()).decode(encoded.toString(), decoded.toString());
+        assertArrayEquals(data, Files.readAllBytes(decoded));
+    }
+
+    private static void assertFormat(int format, Path file) throws IOException {
+        try (BitInputStream in = new BitInputStream(Files.newInputStream(file))) {
+            assertEquals(format, HuffmanFormat.readFormat(in));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * When blocks are stored instead of coded: the shouldStore threshold itself, and
+ * the per-block choice in BLOCKED, parallel and INTERLEAVED files.
+ */
+class StoredBlockTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void thresholdCountsEntropyAndHeader() {
+        // Two equally common symbols: 1 bit each, plus a 56 bit header. Coding must
+        // save a 32nd of the raw bits, which 8 bytes can't and 9 bytes can
+        long[] eight = new long[FrequencyCounter.BYTE_ALPHABET];
+        eight['a'] = 4;
+        eight['b'] = 4;
+        assertTrue(HuffmanEncoder.shouldStore(eight, 8));
+
+        long[] nine = eight.clone();
+        nine['a'] = 5;
+        assertFalse(HuffmanEncoder.shouldStore(nine, 9));
+    }
+
+    @Test
+    void uniformBytesAreStored() {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        Arrays.fill(counts, 4096);
+        assertTrue(HuffmanEncoder.shouldStore(counts, 256L * 4096));
+    }
+
+    @Test
+    void blockNoSmallerCodedIsStored() {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        counts['a'] = 900;
+        counts['b'] = 100;
+        assertFalse(HuffmanEncoder.shouldStoreBlock(counts, 1000, 125));
+        assertTrue(HuffmanEncoder.shouldStoreBlock(counts, 1000, 1000));
+    }
+
+    // A text block, a random block and another text block
+    private static byte[] mixed() {
+        byte[] data = new byte[3 * BLOCK_SIZE];
+        Random random = new Random(21);
+        for (int i = 0; i < data.length; i++) {
+            boolean noise = i >= BLOCK_SIZE && i < 2 * BLOCK_SIZE;
+            data[i] = noise ? (byte) random.nextInt(256) : (byte) "aaaabbc ".charAt(random.nextInt(8));
+        }
+        return data;
+    }
+
+    @Test
+    void onlyRandomBlockIsStoredInBlockedFile() throws Exception {
+        byte[] data = mixed();
+        Path input = Files.write(dir.resolve("input"), data);
+        HuffmanCoding coding = new HuffmanCoding(input.toString(), true);
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        Path encoded = dir.resolve("encoded");
+        coding.encode(encoded.toString(), BLOCK_SIZE);
+
+        try (BlockFileReader reader = new BlockFileReader(encoded.toString())) {
+            assertStoredPattern(reader.getIndex());
+            assertArrayEquals(data, reader.decode(0, data.length));
+        }
+    }
+
+    @Test
+    void onlyRandomBlockIsStoredByParallelEncoder() throws Exception {
+        byte[] data = mixed();
+        byte[] encoded = new ParallelEncoder(BLOCK_SIZE).encode(data);
+        BitInputStream in = new BitInputStream(encoded, 0, encoded.length);
+        assertEquals(HuffmanFormat.BLOCKED, HuffmanFormat.readFormat(in));
+        assertStoredPattern(BlockDecoder.readHeader(in).getIndex());
+        assertArrayEquals(data, ByteHuffman.decode(encoded));
+    }
+
+    private static void assertStoredPattern(BlockIndex index) {
+        assertEquals(3, index.getBlockCount());
+        assertFalse(index.isStored(0));
+        assertTrue(index.isStored(1));
+        assertFalse(index.isStored(2));
+        assertEquals(BLOCK_SIZE, index.getByteLength(1));
+        assertTrue(index.getByteLength(0) < BLOCK_SIZE / 2);
+    }
+
+    @Test
+    void randomInterleavedBlocksCostOnlyTheirHeaders() throws Exception {
+        byte[] data = new byte[4 * InterleavedDecoder.DEFAULT_BLOCK_SYMBOLS];
+        new Random(7).nextBytes(data);
+        Path input = Files.write(dir.resolve("input"), data);
+        Path encoded = dir.resolve("encoded");
+        CanonicalCode code = CanonicalCode.fromCounts(FrequencyCounter.countBytes(input.toString()));
+        HuffmanEncoder.encodeFileInterleaved(input.toString(), encoded.toString(), code,
+                InterleavedDecoder.DEFAULT_BLOCK_SYMBOLS, true);
+
+        // Marker and format, the code, then per block only its symbol count and raw
+        // bytes, with no sub-stream lengths, and the closing 0 count
+        assertEquals(2 + code.getHeaderBytes() + 4 * (4 + InterleavedDecoder.DEFAULT_BLOCK_SYMBOLS) + 4,
+                Files.size(encoded));
+
+        byte[] bytes = Files.readAllBytes(encoded);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        HuffmanCoding.decode(new BitInputStream(bytes, 0, bytes.length), decoded, null);
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+}
@@ -0,0 +1,204 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This class is a one pass adaptive huffman coder (the FGK algorithm). Instead of
+ * counting the input first, encoder and decoder both start from a tree holding only
+ * the NYT ("not yet transmitted") leaf and update it identically after every symbol,
+ * so the input is read once and can be a pipe or a socket of any length.
+ *
+ * A symbol seen before is sent as its current code. A new symbol is sent as the
+ * code of NYT followed by 9 raw bits: its byte value, or 256 for the end of the
+ * stream. NYT then splits into a new NYT and a leaf for the symbol.
+ *
+ * The tree lives in arrays indexed by node number. Numbers increase with weight
+ * (the sibling property), the root is the highest number, and siblings are next to
+ * each other. After a symbol, each node on its path is first swapped with the
+ * highest numbered node of the same weight, then incremented, which keeps the
+ * property without rebuilding anything. Memory use is a fixed 513 nodes.
+ */
+public class AdaptiveHuffman {
+    public static final int END_OF_STREAM = 256;
+
+    private static final int NYT = 256;
+    private static final int SYMBOLS = 257;
+    private static final int MAX_NODES = 2 * SYMBOLS - 1;
+    private static final int ROOT = MAX_NODES - 1;
+    private static final int RAW_BITS = 9;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final long[] weights = new long[MAX_NODES];
+    private final int[] parents = new int[MAX_NODES];
+    private final int[] lefts = new int[MAX_NODES];
+    private final int[] rights = new int[MAX_NODES];
+    private final int[] symbols = new int[MAX_NODES];
+
+    // Node number of each symbol's leaf, -1 until it has been seen
+    private final int[] leaves = new int[SYMBOLS];
+
+    // Path bits of the code being written, leaf first
+    private final int[] path = new int[MAX_NODES];
+
+    public AdaptiveHuffman() {
+        Arrays.fill(leaves, -1);
+        makeLeaf(ROOT, NYT, -1);
+    }
+
+    /**
+     * Reads in until it ends and writes the adaptive encoding to out, starting with
+     * the ADAPTIVE format bytes. Nothing is read ahead of what is encoded.
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        BitOutputStream bits = new BitOutputStream(out);
+        HuffmanFormat.writeFormat(bits, HuffmanFormat.ADAPTIVE);
+
+        byte[] block = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(block, 0, block.length)) != -1) {
+            for (int i = 0; i < n; i++) {
+                model.encode(block[i] & 0xFF, bits);
+            }
+        }
+        model.encode(END_OF_STREAM, bits);
+        bits.flush();
+    }
+
+    /**
+     * Decodes a stream written by encode, positioned right after its format bytes,
+     * and writes the symbols to out.
+     */
+    public static void decode(BitInputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int written = 0;
+
+        int symbol;
+        while ((symbol = model.decode(in)) != END_OF_STREAM) {
+            if (written == buffer.length) {
+                out.write(buffer, 0, written);
+                written = 0;
+            }
+            buffer[written++] = (byte) symbol;
+        }
+        out.write(buffer, 0, written);
+    }
+
+    /**
+     * Writes the code of one symbol (a byte value or END_OF_STREAM) and updates the
+     * tree for it.
+     */
+    public void encode(int symbol, BitOutputStream out) throws IOException {
+        int leaf = leaves[symbol];
+        boolean isNew = leaf == -1 || symbol == END_OF_STREAM;
+        writePath(isNew ? leaves[NYT] : leaf, out);
+        if (isNew) out.writeBits(symbol, RAW_BITS);
+        if (symbol != END_OF_STREAM) update(symbol);
+    }
+
+    /**
+     * Reads one symbol and updates the tree for it.
+     *
+     * @return The byte value, or END_OF_STREAM
+     * @throws IOException If the bits run out before the end of stream symbol
+     */
+    public int decode(BitInputStream in) throws IOException {
+        int node = ROOT;
+        while (lefts[node] != -1) {
+            int bit = in.readBit();
+            if (bit < 0) throw new IOException("Stream ended without an end of stream symbol");
+            node = bit == 0 ? lefts[node] : rights[node];
+        }
+
+        int symbol = symbols[node];
+        if (symbol == NYT) {
+            if (in.fill() < RAW_BITS) throw new IOException("Stream ended inside a new symbol");
+            symbol = (int) in.readBits(RAW_BITS);
+            if (symbol == END_OF_STREAM) return symbol;
+        }
+        update(symbol);
+        return symbol;
+    }
+
+    // Writes the bits from the root down to node
+    private void writePath(int node, BitOutputStream out) throws IOException {
+        int depth = 0;
+        for (int child = node; child != ROOT; child = parents[child]) {
+            path[depth++] = rights[parents[child]] == child ? 1 : 0;
+        }
+        while (depth > 0) {
+            out.writeBit(path[--depth]);
+        }
+    }
+
+    private void update(int symbol) {
+        int node = leaves[symbol];
+        if (node == -1) {
+            // NYT becomes a parent of the new NYT and the new symbol's leaf
+            int parent = leaves[NYT];
+            makeLeaf(parent - 2, NYT, parent);
+            makeLeaf(parent - 1, symbol, parent);
+            lefts[parent] = parent - 2;
+            rights[parent] = parent - 1;
+            symbols[parent] = -1;
+            node = parent - 1;
+        }
+
+        while (true) {
+            // Move node to the top of its block of equal weights, unless that is its parent
+            int leader = node;
+            while (leader < ROOT && weights[leader + 1] == weights[node]) leader++;
+            if (leader != node && leader != parents[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+
+            weights[node]++;
+            if (node == ROOT) return;
+            node = parents[node];
+        }
+    }
+
+    private void makeLeaf(int node, int symbol, int parent) {
+        weights[node] = 0;
+        parents[node] = parent;
+        lefts[node] = -1;
+        rights[node] = -1;
+        symbols[node] = symbol;
+        leaves[symbol] = node;
+    }
+
+    // Exchanges the subtrees at two node numbers, each keeping its place under its parent
+    private void swap(int a, int b) {
+        long weight = weights[a];
+        weights[a] = weights[b];
+        weights[b] = weight;
+        int symbol = symbols[a];
+        symbols[a] = symbols[b];
+        symbols[b] = symbol;
+        int left = lefts[a];
+        lefts[a] = lefts[b];
+        lefts[b] = left;
+        int right = rights[a];
+        rights[a] = rights[b];
+        rights[b] = right;
+
+        relink(a);
+        relink(b);
+    }
+
+    // Points the children (or the symbol's leaf entry) of a moved node back at it
+    private void relink(int node) {
+        if (lefts[node] == -1) {
+            leaves[symbols[node]] = node;
+        }
+        else {
+            parents[lefts[node]] = node;
+            parents[rights[node]] = node;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * This class builds huffman coding trees in parallel primitive arrays instead of
+ * TreeNode objects. Nodes are numbered: the leaves are 0 to leafCount - 1 in
+ * increasing order of weight, and every merge adds the next internal node after
+ * them, so the root is always the last node. All arrays are allocated once for
+ * the alphabet, and a builder can be reused for any number of trees without
+ * allocating anything.
+ *
+ * The merge is the same two queue method makeTree uses: the sorted leaves are one
+ * queue, the merged nodes (which come out in increasing weight) are the other,
+ * and the two smallest fronts are merged each step, taking the leaf on a tie.
+ * A builder is not thread safe; use one per thread.
+ */
+public class ArrayTreeBuilder {
+    private final int alphabetSize;
+    private final int symbolBits;
+
+    // Sort keys, (count << symbolBits) | symbol, for the leaves
+    private final long[] keys;
+
+    // Per node: weight and depth. Per leaf: symbol. Per internal node: children
+    private final long[] weights;
+    private final int[] depths;
+    private final int[] symbols;
+    private final int[] left;
+    private final int[] right;
+    private int leafCount;
+
+    public ArrayTreeBuilder(int alphabetSize) {
+        if (alphabetSize < 2) throw new IllegalArgumentException("Alphabet needs at least 2 symbols");
+        this.alphabetSize = alphabetSize;
+        this.symbolBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+        this.keys = new long[alphabetSize];
+        this.weights = new long[2 * alphabetSize - 1];
+        this.depths = new int[2 * alphabetSize - 1];
+        this.symbols = new int[alphabetSize];
+        this.left = new int[alphabetSize - 1];
+        this.right = new int[alphabetSize - 1];
+    }
+
+    /**
+     * Builds the tree for a histogram. Symbols with a count of 0 are left out, like
+     * in makeSortedList; if fewer than two symbols occur, the next symbols are added
+     * with weight 0 so the tree still has two leaves.
+     *
+     * @param counts Histogram indexed by symbol, at most alphabetSize long
+     * @return The index of the root
+     */
+    public int build(long[] counts) {
+        long maxCount = Long.MAX_VALUE >>> symbolBits;
+        int n = 0;
+        for (int symbol = 0; symbol < counts.length; symbol++) {
+            if (counts[symbol] == 0) continue;
+            if (counts[symbol] > maxCount) throw new IllegalArgumentException("Count of symbol " + symbol + " is too large");
+            keys[n++] = (counts[symbol] << symbolBits) | symbol;
+        }
+        if (n == 0) keys[n++] = 0;
+        if (n == 1) keys[n++] = ((keys[0] & ((1L << symbolBits) - 1)) + 1) % Math.max(2, counts.length);
+
+        // Ties on weight are broken by symbol, the same order CharFreq sorts in
+        Arrays.sort(keys, 0, n);
+        for (int i = 0; i < n; i++) {
+            symbols[i] = (int) (keys[i] & ((1L << symbolBits) - 1));
+            weights[i] = keys[i] >>> symbolBits;
+        }
+        return merge(n);
+    }
+
+    /**
+     * Builds the tree for leaves that are already sorted by increasing weight.
+     *
+     * @param sortedSymbols Symbol of every leaf
+     * @param sortedWeights Weight of every leaf, in increasing order
+     * @param n Number of leaves, between 2 and alphabetSize
+     * @return The index of the root
+     */
+    public int buildSorted(int[] sortedSymbols, long[] sortedWeights, int n) {
+        if (n < 2 || n > alphabetSize) throw new IllegalArgumentException("Need between 2 and " + alphabetSize + " leaves");
+        System.arraycopy(sortedSymbols, 0, symbols, 0, n);
+        System.arraycopy(sortedWeights, 0, weights, 0, n);
+        return merge(n);
+    }
+
+    // Merges the n sorted leaves into a tree and works out every node's depth
+    private int merge(int n) {
+        leafCount = n;
+
+        // leaf is the front of the leaf queue, merged the front of the internal one
+        int leaf = 0, merged = n, next = n;
+        while (next < 2 * n - 1) {
+            int first = (merged == next || (leaf < n && weights[leaf] <= weights[merged])) ? leaf++ : merged++;
+            int second = (merged == next || (leaf < n && weights[leaf] <= weights[merged])) ? leaf++ : merged++;
+            left[next - n] = first;
+            right[next - n] = second;
+            weights[next] = weights[first] + weights[second];
+            next++;
+        }
+
+        // Children always come before their parent, so walk down from the root
+        int root = 2 * n - 2;
+        depths[root] = 0;
+        for (int node = root; node >= n; node--) {
+            depths[left[node - n]] = depths[node] + 1;
+            depths[right[node - n]] = depths[node] + 1;
+        }
+        return root;
+    }
+
+    public int getAlphabetSize() { return alphabetSize; }
+    public int getLeafCount() { return leafCount; }
+    public int getRoot() { return 2 * leafCount - 2; }
+    public boolean isLeaf(int node) { return node < leafCount; }
+    public int getSymbol(int leaf) { return symbols[leaf]; }
+    public long getWeight(int node) { return weights[node]; }
+    public int getDepth(int node) { return depths[node]; }
+    public int getLeft(int node) { return left[node - leafCount]; }
+    public int getRight(int node) { return right[node - leafCount]; }
+
+    /**
+     * Stores the depth of every leaf of the last tree built as that symbol's code
+     * length. Symbols not in the tree get 0.
+     *
+     * @param lengths Array of at least alphabetSize, filled in place
+     */
+    public void codeLengths(int[] lengths) {
+        Arrays.fill(lengths, 0, alphabetSize, 0);
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            lengths[symbols[leaf]] = depths[leaf];
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package huffman;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class compresses every file under a directory without any prompts, one task
+ * per file. Compressing lots of small files is mostly waiting on I/O, so each file
+ * gets its own virtual thread when the JVM has them (Java 21 and up) and a thread
+ * from a pool otherwise. A semaphore bounds how many files are open at once, so
+ * tens of thousands of tasks never run out of file handles.
+ *
+ * Every input file is written to the same relative path under the output directory
+ * with ".huf" added, in the CANONICAL format any HuffmanCoding can decode. Small
+ * files are read whole and encoded in memory; larger ones are counted and encoded
+ * through memory mapped regions by HuffmanEncoder.encodeBytes. Either way, a file
+ * that can't be read or written is reported as failed.
+ *
+ * Usage: java huffman.BatchCompressor inputDir outputDir [maxOpenFiles]
+ */
+public class BatchCompressor {
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    // Files up to this size are encoded in memory with ByteHuffman
+    private static final long IN_MEMORY_LIMIT = 1 << 20;
+
+    private final Path inputDir;
+    private final Path outputDir;
+    private final Semaphore openFiles;
+    private final int maxOpenFiles;
+
+    /**
+     * Result of compressing one file.
+     */
+    public static class Result {
+        public final Path file;
+        public final long inputBytes;
+        public final long outputBytes;
+        public final String error;
+
+        Result(Path file, long inputBytes, long outputBytes, String error) {
+            this.file = file;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.error = error;
+        }
+
+        // Compressed size as a fraction of the original, 0 for empty files
+        public double ratio() {
+            return inputBytes == 0 ? 0 : (double) outputBytes / inputBytes;
+        }
+    }
+
+    public BatchCompressor(Path inputDir, Path outputDir, int maxOpenFiles) {
+        if (maxOpenFiles < 1) throw new IllegalArgumentException("maxOpenFiles must be positive");
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.maxOpenFiles = maxOpenFiles;
+        this.openFiles = new Semaphore(maxOpenFiles);
+    }
+
+    /**
+     * Compresses every regular file under the input directory and waits for all of them.
+     *
+     * @return One result per file, in the order the directory walk found them
+     */
+    public List<Result> compressAll() throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(inputDir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        List<Future<Result>> futures = new ArrayList<Future<Result>>(files.size());
+        ExecutorService executor = newExecutor(maxOpenFiles);
+        try {
+            for (Path file : files) {
+                futures.add(executor.submit(() -> compress(file)));
+            }
+            List<Result> results = new ArrayList<Result>(files.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                }
+                catch (ExecutionException e) {
+                    // compress catches its own errors, so this is a bug
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    // Compresses one file, holding a permit while it has files open
+    private Result compress(Path file) throws InterruptedException {
+        Path target = outputDir.resolve(inputDir.relativize(file).toString() + ".huf");
+        openFiles.acquire();
+        try {
+            Files.createDirectories(target.getParent());
+            long size = Files.size(file);
+            if (size <= IN_MEMORY_LIMIT) {
+                Files.write(target, ByteHuffman.encode(Files.readAllBytes(file)));
+            }
+            else {
+                HuffmanEncoder.encodeBytes(file.toString(), target.toString());
+            }
+            return new Result(file, size, Files.size(target), null);
+        }
+        catch (IOException | RuntimeException e) {
+            return new Result(file, 0, 0, e.toString());
+        }
+        finally {
+            openFiles.release();
+        }
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task if this JVM has
+     * them, and a fixed pool of threads otherwise.
+     */
+    static ExecutorService newExecutor(int fallbackThreads) {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java huffman.BatchCompressor inputDir outputDir [maxOpenFiles]");
+            return;
+        }
+        int maxOpenFiles = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_OPEN_FILES;
+        BatchCompressor compressor = new BatchCompressor(Paths.get(args[0]), Paths.get(args[1]), maxOpenFiles);
+
+        // A batch can run for a while, so let JConsole watch its counters
+        HuffmanMetrics.register();
+
+        long start = System.nanoTime();
+        List<Result> results = compressor.compressAll();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long inputBytes = 0, outputBytes = 0;
+        int failed = 0;
+        for (Result result : results) {
+            if (result.error != null) {
+                System.out.println(result.file + ": " + result.error);
+                failed++;
+                continue;
+            }
+            System.out.printf("%s: %d -> %d bytes (%.1f%%)\n", result.file, result.inputBytes,
+                    result.outputBytes, 100 * result.ratio());
+            inputBytes += result.inputBytes;
+            outputBytes += result.outputBytes;
+        }
+
+        System.out.printf("%d files (%d failed), %d -> %d bytes (%.1f%%) in %.2f s, %.1f MB/s, %.0f files/s\n",
+                results.size(), failed, inputBytes, outputBytes,
+                inputBytes == 0 ? 0 : 100.0 * outputBytes / inputBytes, seconds,
+                inputBytes / (1024.0 * 1024.0) / seconds, results.size() / seconds);
+    }
+}
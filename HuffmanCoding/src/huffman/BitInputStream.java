@@ -0,0 +1,210 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * This class reads individual bits from an InputStream. Unread bits are kept at
+ * the top of a 64 bit window, which is refilled a whole long word at a time from
+ * a byte buffer, so callers can peek at up to 56 bits at once.
+ */
+public class BitInputStream implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    // The oldest unread bit is the top bit of window, windowBits of them are valid
+    private long window;
+    private int windowBits;
+
+    public BitInputStream(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads the bits of data[offset, offset + length) straight out of the array,
+     * without copying it or allocating a buffer.
+     */
+    public BitInputStream(byte[] data, int offset, int length) {
+        this.in = InputStream.nullInputStream();
+        this.buffer = data;
+        this.position = offset;
+        this.limit = offset + length;
+        this.endOfStream = true;
+    }
+
+    /**
+     * Skips the padding written by writeBitString or BitOutputStream.writePadding:
+     * zeroes up to and including the first 1 in the first byte. A first byte of
+     * all zeroes is skipped entirely.
+     */
+    public void skipPadding() throws IOException {
+        fill();
+        int padding = 8;
+        if (windowBits >= 8 && (window >>> 56) != 0) {
+            padding = Long.numberOfLeadingZeros(window) + 1;
+        }
+        skip(Math.min(padding, windowBits));
+    }
+
+    /**
+     * Tops the window up to at least 56 bits, or as many as are left in the stream.
+     *
+     * @return The number of bits now available to peek
+     */
+    public int fill() throws IOException {
+        if (windowBits >= 56) return windowBits;
+        if (limit - position < 8) refillBuffer();
+
+        if (limit - position >= 8) {
+            // Load a whole word and keep the bytes that fit below the valid bits
+            long w = (long) LONG_VIEW.get(buffer, position);
+            window |= w >>> windowBits;
+            int bytes = (63 - windowBits) >>> 3;
+            position += bytes;
+            windowBits += bytes << 3;
+        }
+        else {
+            while (windowBits <= 56 && position < limit) {
+                window |= (buffer[position++] & 0xFFL) << (56 - windowBits);
+                windowBits += 8;
+            }
+        }
+        return windowBits;
+    }
+
+    /**
+     * Returns the next n bits without consuming them. Bits past the end of the
+     * stream read as zero. Call fill first to make sure enough bits are buffered.
+     *
+     * @param n How many bits to look at, between 1 and 56
+     */
+    public long peek(int n) {
+        return window >>> (64 - n);
+    }
+
+    public int available() { return windowBits; }
+
+    /**
+     * Consumes n bits that are already in the window (n <= available()).
+     */
+    public void skip(int n) {
+        window <<= n;
+        windowBits -= n;
+    }
+
+    /**
+     * @return The next bit, or -1 if the stream has no bits left
+     */
+    public int readBit() throws IOException {
+        if (windowBits == 0 && fill() == 0) return -1;
+        int bit = (int) (window >>> 63);
+        skip(1);
+        return bit;
+    }
+
+    /**
+     * Reads the next n bits as an unsigned number, most significant bit first.
+     * Missing bits at the end of the stream read as zero.
+     *
+     * @param n How many bits to read, between 1 and 56
+     */
+    public long readBits(int n) throws IOException {
+        fill();
+        long bits = peek(n);
+        skip(Math.min(n, windowBits));
+        return bits;
+    }
+
+    /**
+     * Reads len whole bytes into b. The stream must be at a byte boundary, which it
+     * is after reading only multiples of 8 bits.
+     *
+     * @throws EOFException If the stream ends before len bytes were read
+     */
+    public void readFully(byte[] b, int offset, int len) throws IOException {
+        if ((windowBits & 7) != 0) throw new IllegalStateException("Not at a byte boundary");
+
+        // Hand out the bytes still in the window, then the buffer, then the stream
+        while (len > 0 && windowBits > 0) {
+            b[offset++] = (byte) (window >>> 56);
+            skip(8);
+            len--;
+        }
+        if (len == 0) return;
+
+        // The window may still hold copies of buffered bytes that are read directly below
+        window = 0;
+
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, offset, n);
+        position += n;
+        offset += n;
+        len -= n;
+
+        while (len > 0) {
+            int read = in.read(b, offset, len);
+            if (read == -1) throw new EOFException("Stream ended inside a block");
+            offset += read;
+            len -= read;
+        }
+    }
+
+    /**
+     * Copies every byte left in the stream to out in bulk, with no bit level work.
+     * The stream must be at a byte boundary.
+     *
+     * @return The number of bytes copied
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        if ((windowBits & 7) != 0) throw new IllegalStateException("Not at a byte boundary");
+
+        long copied = 0;
+        while (windowBits > 0) {
+            out.write((int) (window >>> 56));
+            skip(8);
+            copied++;
+        }
+        window = 0;
+
+        out.write(buffer, position, limit - position);
+        copied += limit - position;
+        position = limit;
+        return copied + in.transferTo(out);
+    }
+
+    private void refillBuffer() throws IOException {
+        if (endOfStream) return;
+        int remaining = limit - position;
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        position = 0;
+        limit = remaining;
+
+        while (limit < buffer.length) {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n == -1) {
+                endOfStream = true;
+                break;
+            }
+            limit += n;
+            if (limit >= 8) break;
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
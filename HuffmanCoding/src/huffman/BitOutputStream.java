@@ -0,0 +1,110 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class writes individual bits to an OutputStream. Bits are collected into a
+ * 64 bit word, and every full word is stored as 8 bytes in a byte buffer which is
+ * written out whenever it fills up.
+ */
+public class BitOutputStream implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    // The newest bits are at the bottom of word, used of them are valid
+    private long word;
+    private int used;
+    private long bitsWritten;
+
+    public BitOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes zeroes and then a 1 so that the padding plus totalBits is a multiple
+     * of 8. This is the same padding writeBitString uses, where the 1 signifies the
+     * end of padding when reading.
+     *
+     * @param totalBits Number of bits that will be written after the padding
+     */
+    public void writePadding(long totalBits) throws IOException {
+        writeBits(1, 8 - (int) (totalBits % 8));
+    }
+
+    public void writeBit(int bit) throws IOException {
+        writeBits(bit & 1, 1);
+    }
+
+    /**
+     * Writes the low n bits of value, most significant bit first. All bits of value
+     * above the low n must be zero.
+     *
+     * @param value The bits to write
+     * @param n How many bits to write, between 0 and 64
+     */
+    public void writeBits(long value, int n) throws IOException {
+        bitsWritten += n;
+        int free = 64 - used;
+        if (n < free) {
+            word = (word << n) | value;
+            used += n;
+            return;
+        }
+
+        // Fill the current word with the top bits of value and start the next one
+        int rest = n - free;
+        writeWord(used == 0 ? value >>> rest : (word << free) | (value >>> rest));
+        word = rest == 0 ? 0 : value & (-1L >>> (64 - rest));
+        used = rest;
+    }
+
+    /**
+     * Writes zeroes up to the next byte boundary, so the next bit starts a new byte.
+     */
+    public void padToByte() throws IOException {
+        int partial = (int) (bitsWritten & 7);
+        if (partial != 0) writeBits(0, 8 - partial);
+    }
+
+    public long getBitsWritten() { return bitsWritten; }
+
+    private void writeWord(long w) throws IOException {
+        if (position > buffer.length - 8) flushBuffer();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (w >>> shift);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Writes any buffered bits, padding the last byte with zeroes on the right,
+     * and flushes the underlying stream. Bits written afterwards start a new byte.
+     */
+    public void flush() throws IOException {
+        if (used > 0) {
+            if (position > buffer.length - 8) flushBuffer();
+            long aligned = word << (64 - used);
+            for (int shift = 56; shift > 56 - used; shift -= 8) {
+                buffer[position++] = (byte) (aligned >>> shift);
+            }
+        }
+        word = 0;
+        used = 0;
+        flushBuffer();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
@@ -0,0 +1,18 @@
+package huffman;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Decoding one block. The block size is the encoded size, so the ratio is the
+ * same encoded over decoded ratio BlockEncodeEvent reports.
+ */
+@Name("huffman.BlockDecode")
+@Label("Block Decode")
+@Description("One block of symbols decoded")
+public class BlockDecodeEvent extends HuffmanEvent {
+    @Label("Stored")
+    @Description("Whether the block was stored instead of coded")
+    boolean stored;
+}
@@ -0,0 +1,75 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class decodes the blocks of a BLOCKED file. Every block is read into its own
+ * buffer and decoded with a TableDecoder shared by all blocks, since they use the
+ * same code. Stored blocks are copied through.
+ */
+public class BlockDecoder {
+    private final TableDecoder decoder;
+    private final BlockIndex index;
+
+    public BlockDecoder(CanonicalCode code, BlockIndex index) {
+        this.decoder = code.newDecoder();
+        this.index = index;
+    }
+
+    public BlockIndex getIndex() { return index; }
+
+    /**
+     * Reads the code lengths and the index of a BLOCKED file.
+     *
+     * @param in The encoded stream, positioned right after the format byte
+     */
+    public static BlockDecoder readHeader(BitInputStream in) throws IOException {
+        CanonicalCode code = CanonicalCode.readHeader(in);
+        return new BlockDecoder(code, BlockIndex.read(in));
+    }
+
+    /**
+     * Decodes every block in order and writes the symbols to out.
+     *
+     * @param in The encoded stream, positioned right after the index
+     */
+    public void decodeAll(BitInputStream in, OutputStream out) throws IOException {
+        int maxSymbols = 0, maxBytes = 0;
+        for (int i = 0; i < index.getBlockCount(); i++) {
+            maxSymbols = Math.max(maxSymbols, index.getSymbolCount(i));
+            maxBytes = Math.max(maxBytes, index.getByteLength(i));
+        }
+
+        byte[] encoded = new byte[maxBytes];
+        byte[] decoded = new byte[maxSymbols];
+        for (int i = 0; i < index.getBlockCount(); i++) {
+            in.readFully(encoded, 0, index.getByteLength(i));
+            int count = decodeBlock(encoded, 0, index.getByteLength(i), decoded, 0, index.getSymbolCount(i),
+                    index.isStored(i));
+            out.write(decoded, 0, count);
+        }
+    }
+
+    // Decodes one block held in encoded[offset, offset + length) into decoded
+    int decodeBlock(byte[] encoded, int offset, int length, byte[] decoded, int decodedOffset, int count,
+            boolean stored) throws IOException {
+        BlockDecodeEvent event = new BlockDecodeEvent();
+        event.begin();
+        if (stored) {
+            if (length != count) throw new IOException("Invalid stored block");
+            System.arraycopy(encoded, offset, decoded, decodedOffset, count);
+        }
+        else {
+            BitInputStream bits = new BitInputStream(encoded, offset, length);
+            int n = decoder.decode(bits, decoded, decodedOffset, count);
+            if (n != count) throw new IOException("Block ended after " + n + " of " + count + " symbols");
+        }
+        if (event.shouldCommit()) {
+            event.set(length, count, HuffmanEvent.ratio(length, count));
+            event.stored = stored;
+            event.commit();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,17 @@
+package huffman;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encoding one block of a blocked, interleaved or streamed encoding.
+ */
+@Name("huffman.BlockEncode")
+@Label("Block Encode")
+@Description("One block of symbols encoded")
+public class BlockEncodeEvent extends HuffmanEvent {
+    @Label("Stored")
+    @Description("Whether the block was stored instead of coded")
+    boolean stored;
+}
@@ -0,0 +1,147 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class gives random access to a BLOCKED file. The header and block index are
+ * read once when the file is opened; after that any range of the original can be
+ * decoded by reading only the blocks that hold it, and the whole file can be
+ * decoded with its blocks spread over a thread pool.
+ */
+public class BlockFileReader implements Closeable {
+    private final FileChannel channel;
+    private final BlockDecoder decoder;
+    private final BlockIndex index;
+
+    // File position of the first block
+    private final long blocksStart;
+
+    /**
+     * Opens an encoded file and reads its header and block index.
+     *
+     * @param encodedFile A file written by ParallelEncoder or encode(file, blockSymbols)
+     * @throws IOException If the file can't be read or is not a BLOCKED file
+     */
+    public BlockFileReader(String encodedFile) throws IOException {
+        channel = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ);
+        try {
+            // Wrap the channel without closing it when the header has been read
+            BitInputStream in = new BitInputStream(Channels.newInputStream(channel));
+            int format = HuffmanFormat.readFormat(in);
+            if (format != HuffmanFormat.BLOCKED) {
+                throw new IOException(encodedFile + " has no block index");
+            }
+            CanonicalCode code = CanonicalCode.readHeader(in);
+            index = BlockIndex.read(in);
+            decoder = new BlockDecoder(code, index);
+            blocksStart = 2 + code.getHeaderBytes() + index.getHeaderBytes();
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public BlockIndex getIndex() { return index; }
+
+    // Number of symbols in the original
+    public long getLength() { return index.getTotalSymbols(); }
+
+    /**
+     * Decodes part of the original, reading only the blocks that overlap it.
+     *
+     * @param offset Position in the original of the first symbol to decode
+     * @param length Number of symbols to decode
+     * @return The decoded symbols
+     */
+    public byte[] decode(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > getLength()) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is outside the file");
+        }
+        byte[] result = new byte[length];
+        if (length == 0) return result;
+
+        int first = index.findBlock(offset);
+        int last = index.findBlock(offset + length - 1);
+        int written = 0;
+        for (int block = first; block <= last; block++) {
+            byte[] decoded = decodeBlock(block);
+            int from = (int) Math.max(0, offset - index.getSymbolOffset(block));
+            int n = Math.min(decoded.length - from, length - written);
+            System.arraycopy(decoded, from, result, written, n);
+            written += n;
+        }
+        return result;
+    }
+
+    /**
+     * Decodes every block on the given pool and writes them to out in order. At most
+     * two blocks per thread are decoded ahead of the one being written, so memory
+     * stays bounded for large files.
+     *
+     * @param pool The threads to decode on
+     * @param threads Number of threads in pool
+     * @param out Where to write the original
+     */
+    public void decodeAll(ExecutorService pool, int threads, OutputStream out) throws IOException {
+        int ahead = Math.max(1, 2 * threads);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        int next = 0;
+
+        try {
+            while (next < index.getBlockCount() || !pending.isEmpty()) {
+                while (next < index.getBlockCount() && pending.size() < ahead) {
+                    int block = next++;
+                    pending.add(pool.submit(() -> decodeBlock(block)));
+                }
+                out.write(pending.poll().get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Block failed to decode", e.getCause());
+        }
+        finally {
+            for (Future<byte[]> future : pending) future.cancel(true);
+        }
+    }
+
+    /**
+     * Reads one block from the file and decodes it. Safe to call from several
+     * threads at once, since reads use absolute positions.
+     */
+    public byte[] decodeBlock(int block) throws IOException {
+        byte[] encoded = new byte[index.getByteLength(block)];
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        long position = blocksStart + index.getByteOffset(block);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("File ends inside block " + block);
+            }
+        }
+
+        byte[] decoded = new byte[index.getSymbolCount(block)];
+        decoder.decodeBlock(encoded, 0, encoded.length, decoded, 0, decoded.length, index.isStored(block));
+        return decoded;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,113 @@
+package huffman;
+
+import java.io.IOException;
+
+/**
+ * This class describes the blocks of a BLOCKED file: how many symbols each block
+ * decodes to and how many bytes its code bits take. Every block starts on a byte
+ * boundary, so any block can be found from the index and decoded on its own.
+ *
+ * Layout: the block count as 4 bytes, then for every block its symbol count and
+ * its byte length as 4 bytes each. A byte length with HuffmanFormat.STORED_BLOCK
+ * set marks a block stored as raw bytes, one per symbol.
+ */
+public class BlockIndex {
+    private final int[] symbolCounts;
+    private final int[] byteLengths;
+    private final boolean[] stored;
+
+    // Where each block starts, in symbols of the original and in bytes after the index
+    private final long[] symbolOffsets;
+    private final long[] byteOffsets;
+
+    /**
+     * @param symbolCounts Number of symbols in every block
+     * @param byteLengths Number of bytes every block takes
+     * @param stored Which blocks are stored raw, their byte length equal to their symbol count
+     */
+    public BlockIndex(int[] symbolCounts, int[] byteLengths, boolean[] stored) {
+        if (symbolCounts.length != byteLengths.length || symbolCounts.length != stored.length) {
+            throw new IllegalArgumentException("Every block needs a symbol count and a byte length");
+        }
+        this.symbolCounts = symbolCounts.clone();
+        this.byteLengths = byteLengths.clone();
+        this.stored = stored.clone();
+        this.symbolOffsets = new long[symbolCounts.length + 1];
+        this.byteOffsets = new long[symbolCounts.length + 1];
+
+        for (int i = 0; i < symbolCounts.length; i++) {
+            symbolOffsets[i + 1] = symbolOffsets[i] + symbolCounts[i];
+            byteOffsets[i + 1] = byteOffsets[i] + byteLengths[i];
+        }
+    }
+
+    public int getBlockCount() { return symbolCounts.length; }
+    public int getSymbolCount(int block) { return symbolCounts[block]; }
+    public int getByteLength(int block) { return byteLengths[block]; }
+    public boolean isStored(int block) { return stored[block]; }
+    public long getSymbolOffset(int block) { return symbolOffsets[block]; }
+    public long getByteOffset(int block) { return byteOffsets[block]; }
+    public long getTotalSymbols() { return symbolOffsets[symbolCounts.length]; }
+    public long getTotalBytes() { return byteOffsets[symbolCounts.length]; }
+
+    /**
+     * Finds the block holding a symbol of the original.
+     *
+     * @param symbol Position in the original, between 0 and getTotalSymbols() - 1
+     * @return The number of the block containing it
+     */
+    public int findBlock(long symbol) {
+        if (symbol < 0 || symbol >= getTotalSymbols()) {
+            throw new IndexOutOfBoundsException("Symbol " + symbol + " is outside the index");
+        }
+
+        // Last block whose first symbol is at or before the one we want
+        int low = 0, high = symbolCounts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (symbolOffsets[middle] <= symbol) low = middle;
+            else high = middle - 1;
+        }
+        return low;
+    }
+
+    // Size of the index itself once written
+    public long getHeaderBytes() { return 4 + 8L * symbolCounts.length; }
+
+    public void write(BitOutputStream out) throws IOException {
+        out.writeBits(symbolCounts.length, 32);
+        for (int i = 0; i < symbolCounts.length; i++) {
+            out.writeBits(symbolCounts[i] & 0xFFFFFFFFL, 32);
+            out.writeBits((byteLengths[i] | (stored[i] ? HuffmanFormat.STORED_BLOCK : 0)) & 0xFFFFFFFFL, 32);
+        }
+    }
+
+    /**
+     * Reads an index written by write.
+     *
+     * @throws IOException If the stream ends early or a count is negative
+     */
+    public static BlockIndex read(BitInputStream in) throws IOException {
+        int blocks = readInt(in);
+        if (blocks < 0) throw new IOException("Invalid block count " + blocks);
+
+        int[] symbolCounts = new int[blocks];
+        int[] byteLengths = new int[blocks];
+        boolean[] stored = new boolean[blocks];
+        for (int i = 0; i < blocks; i++) {
+            symbolCounts[i] = readInt(in);
+            byteLengths[i] = readInt(in);
+            stored[i] = (byteLengths[i] & HuffmanFormat.STORED_BLOCK) != 0;
+            byteLengths[i] &= ~HuffmanFormat.STORED_BLOCK;
+            if (symbolCounts[i] < 0 || (stored[i] && byteLengths[i] != symbolCounts[i])) {
+                throw new IOException("Invalid block " + i);
+            }
+        }
+        return new BlockIndex(symbolCounts, byteLengths, stored);
+    }
+
+    private static int readInt(BitInputStream in) throws IOException {
+        if (in.fill() < 32) throw new IOException("Truncated block index");
+        return (int) in.readBits(32);
+    }
+}
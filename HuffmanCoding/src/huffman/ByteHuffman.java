@@ -0,0 +1,62 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * This class encodes and decodes byte arrays in memory, treating the input as raw
+ * bytes over a 256 symbol alphabet. The output has the same layout as a file
+ * written by encode() in byte mode, so either can be decoded by the other.
+ */
+public class ByteHuffman {
+    // Only static helpers, don't instantiate
+    private ByteHuffman() { }
+
+    /**
+     * Counts the bytes, builds a canonical code for them and encodes the array.
+     * Arrays that coding wouldn't shrink are stored after a STORED header instead.
+     *
+     * @param data The bytes to encode
+     * @return The header followed by the padded code bits, or the stored bytes
+     */
+    public static byte[] encode(byte[] data) {
+        long[] counts = FrequencyCounter.countBytes(data, 0, data.length);
+        if (HuffmanEncoder.shouldStore(counts, data.length)) {
+            byte[] stored = new byte[data.length + 2];
+            stored[0] = HuffmanFormat.MARKER;
+            stored[1] = HuffmanFormat.STORED;
+            System.arraycopy(data, 0, stored, 2, data.length);
+            return stored;
+        }
+        CanonicalCode code = CanonicalCode.fromCounts(counts);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (BitOutputStream out = new BitOutputStream(bytes)) {
+            HuffmanEncoder.writeHeader(out, code, counts);
+            HuffmanEncoder.encode(data, 0, data.length, code.getCodeTable(), out);
+        }
+        catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an array produced by encode, by encode() on a file, or by a
+     * ParallelEncoder.
+     *
+     * @param encoded The header followed by the padded code bits
+     * @return The original bytes
+     * @throws IOException If the header is missing or invalid
+     */
+    public static byte[] decode(byte[] encoded) throws IOException {
+        BitInputStream in = new BitInputStream(encoded, 0, encoded.length);
+
+        // Room for twice the input, kept below the largest array so big inputs don't overflow
+        int capacity = (int) Math.min(2L * encoded.length, Integer.MAX_VALUE - 8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(capacity);
+        HuffmanCoding.decode(in, out, null);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,188 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class builds canonical Huffman codes from code lengths alone. Symbols are
+ * ordered by code length and then by value, and get consecutive codes in that
+ * order. Since the lengths fully determine the codes, an encoded file only has to
+ * store the length of every symbol for any decoder to rebuild the same tree.
+ *
+ * Header layout, after the marker and format bytes: one byte holding the number of
+ * symbols minus 1, then a (symbol, length) byte pair for every symbol.
+ */
+public class CanonicalCode {
+    public static final int MAX_SYMBOLS = 256;
+
+    private final int[] lengths;
+    private final CodeTable codes;
+
+    /**
+     * Assigns canonical codes to the given lengths.
+     *
+     * @param lengths Code length of every symbol, 0 for symbols that don't occur
+     */
+    public CanonicalCode(int[] lengths) {
+        if (lengths.length > MAX_SYMBOLS) {
+            throw new IllegalArgumentException("At most " + MAX_SYMBOLS + " symbols are supported");
+        }
+        this.lengths = lengths.clone();
+
+        int maxLength = 0;
+        for (int length : lengths) maxLength = Math.max(maxLength, length);
+        if (maxLength > CodeTable.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code lengths are limited to " + CodeTable.MAX_CODE_LENGTH + " bits");
+        }
+
+        // Walk the lengths in increasing order; within a length, symbols are in order already
+        long[] packed = new long[lengths.length];
+        long code = 0;
+        int previousLength = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            for (int symbol = 0; symbol < lengths.length; symbol++) {
+                if (lengths[symbol] != length) continue;
+                code <<= length - previousLength;
+                previousLength = length;
+                packed[symbol] = CodeTable.pack(code, length);
+                code++;
+            }
+        }
+        codes = new CodeTable(packed);
+    }
+
+    /**
+     * Builds a huffman coding tree for a histogram and returns its canonical code.
+     * An empty histogram gets a code for symbols 0 and 1 so a header can still be written.
+     *
+     * @param counts Histogram indexed by symbol
+     */
+    public static CanonicalCode fromCounts(long[] counts) {
+        return fromCounts(counts, new ArrayTreeBuilder(counts.length));
+    }
+
+    /**
+     * Same as fromCounts(counts), but builds the tree in a builder the caller keeps,
+     * so coding block after block doesn't allocate a new one each time. A builder
+     * can't be shared between threads; keep one per thread or stream.
+     *
+     * @param counts Histogram indexed by symbol, at least 2 long
+     * @param builder A builder for at least counts.length symbols
+     */
+    public static CanonicalCode fromCounts(long[] counts, ArrayTreeBuilder builder) {
+        if (counts.length < 2 || counts.length > builder.getAlphabetSize()) {
+            throw new IllegalArgumentException("Histogram must have between 2 and " + builder.getAlphabetSize()
+                    + " symbols");
+        }
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        builder.build(counts);
+        int[] lengths = new int[builder.getAlphabetSize()];
+        builder.codeLengths(lengths);
+        if (event.shouldCommit()) TreeBuildEvent.commit(event, builder);
+        return new CanonicalCode(lengths.length == counts.length ? lengths : Arrays.copyOf(lengths, counts.length));
+    }
+
+    public CodeTable getCodeTable() { return codes; }
+
+    public int[] getLengths() { return lengths.clone(); }
+
+    public int getMaxLength() {
+        int max = 0;
+        for (int length : lengths) max = Math.max(max, length);
+        return max;
+    }
+
+    /**
+     * Builds a TableDecoder for this code, with a table wide enough to resolve
+     * every code in one lookup when the codes are short enough.
+     */
+    public TableDecoder newDecoder() {
+        return new TableDecoder(toTree(), TableDecoder.lookupBitsFor(getMaxLength()));
+    }
+
+    /**
+     * Builds a huffman coding tree with the canonical codes, so the existing
+     * decoders can walk it. Leaves hold their symbol with a probability of 0.
+     */
+    public TreeNode toTree() {
+        TreeNode root = new TreeNode(new CharFreq(), null, null);
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            long code = CodeTable.code(codes.packed(symbol));
+
+            TreeNode node = root;
+            for (int b = length - 1; b > 0; b--) {
+                boolean right = ((code >>> b) & 1) == 1;
+                TreeNode next = right ? node.getRight() : node.getLeft();
+                if (next == null) {
+                    next = new TreeNode(new CharFreq(), null, null);
+                    if (right) node.setRight(next);
+                    else node.setLeft(next);
+                }
+                node = next;
+            }
+
+            TreeNode leaf = new TreeNode(new CharFreq((char) symbol, 0), null, null);
+            if ((code & 1) == 1) node.setRight(leaf);
+            else node.setLeft(leaf);
+        }
+        return root;
+    }
+
+    // Size of the header once written
+    public int getHeaderBytes() {
+        int count = 0;
+        for (int length : lengths) {
+            if (length > 0) count++;
+        }
+        return 1 + 2 * count;
+    }
+
+    /**
+     * Writes the symbol count and the (symbol, length) pairs.
+     */
+    public void writeHeader(BitOutputStream out) throws IOException {
+        int count = 0;
+        for (int length : lengths) {
+            if (length > 0) count++;
+        }
+
+        out.writeBits(count - 1, 8);
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] == 0) continue;
+            out.writeBits(symbol, 8);
+            out.writeBits(lengths[symbol], 8);
+        }
+    }
+
+    /**
+     * Reads a header written by writeHeader and rebuilds the code.
+     *
+     * @param in The encoded stream, positioned right after the format byte
+     * @return The code described by the header
+     * @throws IOException If the stream ends early or the lengths don't form a complete code
+     */
+    public static CanonicalCode readHeader(BitInputStream in) throws IOException {
+        int[] lengths = new int[MAX_SYMBOLS];
+        if (in.fill() < 8) throw new IOException("Truncated header");
+        int count = (int) in.readBits(8) + 1;
+
+        for (int i = 0; i < count; i++) {
+            if (in.fill() < 16) throw new IOException("Truncated header");
+            int symbol = (int) in.readBits(8);
+            lengths[symbol] = (int) in.readBits(8);
+        }
+
+        // Every huffman tree is full, so its lengths use up the whole code space exactly
+        long space = 0;
+        for (int length : lengths) {
+            if (length > CodeTable.MAX_CODE_LENGTH) throw new IOException("Invalid code length " + length);
+            if (length > 0) space += 1L << (CodeTable.MAX_CODE_LENGTH - length);
+        }
+        if (space != 1L << CodeTable.MAX_CODE_LENGTH) throw new IOException("Code lengths do not form a complete code");
+
+        return new CanonicalCode(lengths);
+    }
+}
@@ -0,0 +1,77 @@
+package huffman;
+
+/**
+ * This class stores the encoding of every character as a single packed long,
+ * with the code bits in the high part and the code length in the low 6 bits.
+ * Looking up a code is then one array read instead of walking a String of
+ * '0' and '1' characters.
+ */
+public class CodeTable {
+    // Longest code that still fits next to its length in one long
+    public static final int MAX_CODE_LENGTH = 56;
+
+    private static final int LENGTH_BITS = 6;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private final long[] packed;
+
+    CodeTable(long[] packed) {
+        this.packed = packed;
+    }
+
+    /**
+     * Unpacks the table into the bitstrings getEncodings returns.
+     *
+     * @return Array of bitstrings indexed by character, null if unused
+     */
+    public String[] toEncodings() {
+        String[] encodings = new String[packed.length];
+        for (int c = 0; c < packed.length; c++) {
+            int length = length(packed[c]);
+            if (length == 0) continue;
+
+            long code = code(packed[c]);
+            char[] bits = new char[length];
+            for (int i = 0; i < length; i++) {
+                bits[i] = (char) ('0' + ((code >>> (length - 1 - i)) & 1));
+            }
+            encodings[c] = new String(bits);
+        }
+        return encodings;
+    }
+
+    public int size() { return packed.length; }
+
+    // Packed (code << 6 | length) value, 0 if the symbol has no code
+    public long packed(int symbol) { return packed[symbol]; }
+
+    public static long pack(long code, int length) { return (code << LENGTH_BITS) | length; }
+    public static long code(long packed) { return packed >>> LENGTH_BITS; }
+    public static int length(long packed) { return (int) (packed & LENGTH_MASK); }
+
+    /**
+     * @return The code length of every symbol, 0 for symbols without a code
+     */
+    public int[] lengths() {
+        int[] lengths = new int[packed.length];
+        for (int c = 0; c < packed.length; c++) {
+            lengths[c] = length(packed[c]);
+        }
+        return lengths;
+    }
+
+    /**
+     * Total number of bits needed to encode a text with the given histogram.
+     *
+     * @param counts Histogram indexed by symbol
+     * @return Sum of count * code length over all symbols in this table
+     */
+    public long totalBits(long[] counts) {
+        long bits = 0;
+        int n = Math.min(counts.length, packed.length);
+        for (int c = 0; c < n; c++) {
+            bits += counts[c] * length(packed[c]);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,179 @@
+package huffman;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This class holds a huffman code trained once on a sample corpus and then used
+ * for any number of messages. Building a tree per message costs more than it saves
+ * for small, similar messages, so a codebook counts the samples, builds the tree
+ * the same way makeSortedList and makeTree do, and keeps only the canonical code
+ * lengths, which is all that needs to be saved to disk.
+ *
+ * Every byte value is counted once more than it occurs in the samples, so every
+ * byte has a code and any message can be encoded. A codebook never changes after
+ * it is built: encode and decode only read its tables and allocate nothing but
+ * their result, so one codebook can be shared by any number of threads.
+ *
+ * An encoded message is its length in bytes as a varint (7 bits per byte, low
+ * groups first, the top bit set on every byte but the last), then the code bits
+ * padded with zeroes to a whole byte. There is no per message header.
+ */
+public final class Codebook {
+    private final CanonicalCode code;
+    private final CodeTable codes;
+    private final TableDecoder decoder;
+
+    public Codebook(CanonicalCode code) {
+        this.code = code;
+        this.codes = code.getCodeTable();
+        this.decoder = code.newDecoder();
+        if (codes.size() != FrequencyCounter.BYTE_ALPHABET) {
+            throw new IllegalArgumentException("A codebook needs a code for all " + FrequencyCounter.BYTE_ALPHABET + " byte values");
+        }
+        for (int b = 0; b < codes.size(); b++) {
+            if (CodeTable.length(codes.packed(b)) == 0) throw new IllegalArgumentException("Byte " + b + " has no code");
+        }
+    }
+
+    /**
+     * Counts the bytes of every sample file together and trains a codebook on them.
+     *
+     * @param sampleFiles Files that look like the messages that will be encoded
+     */
+    public static Codebook train(String... sampleFiles) {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        for (String file : sampleFiles) {
+            long[] fileCounts = FrequencyCounter.countBytes(file);
+            for (int b = 0; b < counts.length; b++) counts[b] += fileCounts[b];
+        }
+        return train(counts);
+    }
+
+    /**
+     * Trains a codebook on a byte histogram, adding one to every count first.
+     *
+     * @param counts Histogram of 256 byte values
+     */
+    public static Codebook train(long[] counts) {
+        return train(counts, new ArrayTreeBuilder(FrequencyCounter.BYTE_ALPHABET));
+    }
+
+    /**
+     * Same as train(counts), building the tree in a builder the caller keeps, such
+     * as the one a CodebookCache trains all of its codebooks with.
+     *
+     * @param builder A builder for 256 symbols
+     */
+    public static Codebook train(long[] counts, ArrayTreeBuilder builder) {
+        if (counts.length != FrequencyCounter.BYTE_ALPHABET) {
+            throw new IllegalArgumentException("Expected a histogram of " + FrequencyCounter.BYTE_ALPHABET + " byte values");
+        }
+        long[] smoothed = new long[counts.length];
+        for (int b = 0; b < counts.length; b++) smoothed[b] = counts[b] + 1;
+        return new Codebook(CanonicalCode.fromCounts(smoothed, builder));
+    }
+
+    /**
+     * Reads a codebook written by save.
+     *
+     * @throws IOException If the file can't be read or isn't a codebook
+     */
+    public static Codebook load(String filename) throws IOException {
+        try (BitInputStream in = new BitInputStream(new FileInputStream(filename))) {
+            if (HuffmanFormat.readFormat(in) != HuffmanFormat.CODEBOOK) {
+                throw new IOException(filename + " is not a codebook");
+            }
+            return new Codebook(CanonicalCode.readHeader(in));
+        }
+    }
+
+    /**
+     * Writes the marker and format bytes and the canonical code lengths.
+     */
+    public void save(String filename) throws IOException {
+        try (BitOutputStream out = new BitOutputStream(new FileOutputStream(filename))) {
+            HuffmanFormat.writeFormat(out, HuffmanFormat.CODEBOOK);
+            code.writeHeader(out);
+        }
+    }
+
+    public CanonicalCode getCode() { return code; }
+
+    /**
+     * Encodes a whole message.
+     *
+     * @param message The bytes to encode
+     * @return The length varint followed by the padded code bits
+     */
+    public byte[] encode(byte[] message) {
+        long bits = 0;
+        for (byte b : message) {
+            bits += CodeTable.length(codes.packed(b & 0xFF));
+        }
+
+        byte[] encoded = new byte[varintSize(message.length) + (int) ((bits + 7) >>> 3)];
+        int position = writeVarint(encoded, message.length);
+
+        // Codes are at most 56 bits and fewer than 8 bits are ever left over,
+        // so the word never loses a bit that hasn't been stored yet
+        long word = 0;
+        int used = 0;
+        for (byte b : message) {
+            long packed = codes.packed(b & 0xFF);
+            int length = CodeTable.length(packed);
+            word = (word << length) | CodeTable.code(packed);
+            used += length;
+            while (used >= 8) {
+                used -= 8;
+                encoded[position++] = (byte) (word >>> used);
+            }
+        }
+        if (used > 0) encoded[position] = (byte) (word << (8 - used));
+        return encoded;
+    }
+
+    /**
+     * Decodes a message produced by encode with the same codebook.
+     *
+     * @param encoded The length varint followed by the padded code bits
+     * @return The original bytes
+     * @throws IOException If the message is truncated
+     */
+    public byte[] decode(byte[] encoded) throws IOException {
+        long length = 0;
+        int position = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position == encoded.length || shift > 28) throw new IOException("Invalid message length");
+            int b = encoded[position++];
+            length |= (long) (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (length > Integer.MAX_VALUE) throw new IOException("Invalid message length");
+
+        byte[] message = new byte[(int) length];
+        BitInputStream in = new BitInputStream(encoded, position, encoded.length - position);
+        if (decoder.decode(in, message, 0, message.length) < message.length) {
+            throw new IOException("Message is truncated");
+        }
+        return message;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    // Stores value at the start of out and returns the number of bytes used
+    private static int writeVarint(byte[] out, int value) {
+        int position = 0;
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,163 @@
+package huffman;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the most recently used codebooks, keyed by a coarse fingerprint
+ * of the histogram they were trained on. Blocks whose statistics barely differ get
+ * the same fingerprint, so instead of building an almost identical tree and table
+ * for each one, the cached codebook is reused as long as it costs little more than
+ * a code built for the block itself would.
+ *
+ * The fingerprint stores, for every byte value, the bit length of its share of the
+ * total scaled to 1/256 steps, so shares within a factor of two of each other
+ * usually match and bytes rarer than 1 in 256 all look the same (every codebook
+ * has a code for them anyway). The fingerprint only finds a likely codebook
+ * quickly; whether any codebook is reused is decided by its cost: the bits its
+ * code needs for the histogram, compared against the entropy of the histogram,
+ * which no code can beat. If the fingerprint's codebook costs too much, every
+ * cached codebook is priced before a new one is trained.
+ *
+ * All methods are synchronized so one cache can be shared between threads.
+ */
+public class CodebookCache {
+    private static final int SHARE_SCALE = 256;
+
+    private final int capacity;
+    private final double maxOverhead;
+    private final LinkedHashMap<Fingerprint, Codebook> entries;
+
+    // New codebooks are trained one at a time, get() is synchronized
+    private final ArrayTreeBuilder builder = new ArrayTreeBuilder(FrequencyCounter.BYTE_ALPHABET);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity Most codebooks to keep, least recently used ones are evicted first
+     * @param maxOverhead Largest extra cost to accept when reusing a codebook, as a
+     *                    fraction of the entropy (0.02 accepts 2% more bits)
+     */
+    public CodebookCache(int capacity, double maxOverhead) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        if (maxOverhead < 0) throw new IllegalArgumentException("maxOverhead can't be negative");
+        this.capacity = capacity;
+        this.maxOverhead = maxOverhead;
+
+        // Access order turns the map into an LRU list
+        this.entries = new LinkedHashMap<Fingerprint, Codebook>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, Codebook> eldest) {
+                if (size() <= CodebookCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a codebook for a block with the given histogram. The codebook cached
+     * under its fingerprint is tried first; if there is none, or it costs too much,
+     * every cached codebook is priced and the cheapest one is used if it costs at
+     * most maxOverhead more than the entropy. Only when none does is a new codebook
+     * trained, which is then cached under the fingerprint.
+     *
+     * @param counts Histogram of 256 byte values
+     */
+    public synchronized Codebook get(long[] counts) {
+        double minimumBits = minimumBits(counts);
+        Fingerprint key = new Fingerprint(counts);
+        Codebook cached = entries.get(key);
+        if (cached != null && extraCost(cached, counts, minimumBits) <= maxOverhead) {
+            hits++;
+            return cached;
+        }
+
+        Fingerprint bestKey = null;
+        double bestCost = maxOverhead;
+        for (Map.Entry<Fingerprint, Codebook> entry : entries.entrySet()) {
+            double cost = extraCost(entry.getValue(), counts, minimumBits);
+            if (cost <= bestCost) {
+                bestKey = entry.getKey();
+                bestCost = cost;
+            }
+        }
+        if (bestKey != null) {
+            hits++;
+            // Looking it up again marks it as recently used
+            return entries.get(bestKey);
+        }
+
+        misses++;
+        Codebook trained = Codebook.train(counts, builder);
+        entries.put(key, trained);
+        return trained;
+    }
+
+    /**
+     * Estimated extra cost of encoding a histogram with a codebook.
+     *
+     * @return Bits the code needs divided by the entropy in bits, minus 1
+     */
+    public static double extraCost(Codebook codebook, long[] counts) {
+        return extraCost(codebook, counts, minimumBits(counts));
+    }
+
+    private static double extraCost(Codebook codebook, long[] counts, double minimumBits) {
+        if (minimumBits == 0) return 0;
+        return codebook.getCode().getCodeTable().totalBits(counts) / minimumBits - 1;
+    }
+
+    // Entropy of the histogram in bits, but at least a bit per byte since no code is shorter
+    private static double minimumBits(long[] counts) {
+        FrequencyModel model = new FrequencyModel(counts);
+        return Math.max(model.getEntropyBits(), model.getTotal());
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized int size() { return entries.size(); }
+    public int getCapacity() { return capacity; }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized String toString() {
+        return "CodebookCache[" + entries.size() + "/" + capacity + " entries, "
+                + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+
+    /**
+     * Quantized shares of a histogram, comparable by value.
+     */
+    private static class Fingerprint {
+        private final byte[] levels;
+        private final int hash;
+
+        Fingerprint(long[] counts) {
+            long total = 0;
+            for (long count : counts) total += count;
+
+            levels = new byte[counts.length];
+            for (int b = 0; b < counts.length; b++) {
+                // Scale in floating point so huge counts can't overflow
+                long share = (long) ((double) counts[b] * SHARE_SCALE / total);
+                levels[b] = (byte) (64 - Long.numberOfLeadingZeros(share));
+            }
+            hash = Arrays.hashCode(levels);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint && Arrays.equals(levels, ((Fingerprint) o).levels);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+}
@@ -0,0 +1,262 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is an order-1 context model: instead of one histogram for the whole
+ * file, every byte is counted under the byte before it (the first byte under 0),
+ * and each of the 256 contexts can have its own canonical code. Text has strong
+ * links from one character to the next, so the code for the symbol after 'q' can
+ * be very different from the one after ' '.
+ *
+ * A context only gets its own code if the bits it saves pay for its header; sparse
+ * contexts fall back to one order-0 code for the whole file. Encoding looks codes
+ * up in one flat table indexed by (context << 8) | symbol, and decoding uses one
+ * flat array holding a lookup table per distinct code, so neither touches objects
+ * per symbol unless a code is longer than the table.
+ *
+ * Layout after the marker and format bytes: the fallback code lengths, a 32 byte
+ * bitmap of the contexts with their own code, the code lengths of each of those in
+ * order, the symbol count as a 64 bit number, then the code bits padded with
+ * zeroes to a whole byte. Symbols are always bytes.
+ */
+public class ContextHuffman {
+    private static final int CONTEXTS = FrequencyCounter.BYTE_ALPHABET;
+    private static final int LOOKUP_BITS = TableDecoder.DEFAULT_LOOKUP_BITS;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final CanonicalCode fallback;
+
+    // Own code per context, null where the context uses the fallback
+    private final CanonicalCode[] codes;
+
+    private ContextHuffman(CanonicalCode fallback, CanonicalCode[] codes) {
+        this.fallback = fallback;
+        this.codes = codes;
+    }
+
+    /**
+     * Builds a code for every context that is worth one.
+     *
+     * @param counts Flat histogram where (context << 8) | symbol counts symbol after context
+     */
+    static ContextHuffman fromCounts(long[] counts) {
+        long[] global = new long[FrequencyCounter.BYTE_ALPHABET];
+        for (int i = 0; i < counts.length; i++) {
+            global[i & 0xFF] += counts[i];
+        }
+        ArrayTreeBuilder builder = new ArrayTreeBuilder(FrequencyCounter.BYTE_ALPHABET);
+        CanonicalCode fallback = CanonicalCode.fromCounts(global, builder);
+
+        CanonicalCode[] codes = new CanonicalCode[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            long[] row = Arrays.copyOfRange(counts, context << 8, (context + 1) << 8);
+            long fallbackBits = fallback.getCodeTable().totalBits(row);
+            if (fallbackBits == 0) continue;
+
+            CanonicalCode own = CanonicalCode.fromCounts(row, builder);
+            long ownBits = own.getCodeTable().totalBits(row) + 8L * own.getHeaderBytes();
+            if (ownBits < fallbackBits) codes[context] = own;
+        }
+        return new ContextHuffman(fallback, codes);
+    }
+
+    /**
+     * Encodes a whole array with an order-1 model built for it.
+     *
+     * @return The marker, format and header bytes followed by the code bits
+     */
+    public static byte[] encode(byte[] data) {
+        long[] counts = new long[CONTEXTS << 8];
+        addContextCounts(counts, ByteBuffer.wrap(data), 0);
+        ContextHuffman model = fromCounts(counts);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 1024);
+        try (BitOutputStream out = new BitOutputStream(bytes)) {
+            model.writeHeader(out, data.length);
+            model.encode(ByteBuffer.wrap(data), model.encodingTable(), 0, out);
+        }
+        catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes inputFile, read as raw bytes through memory mapped regions, into
+     * encodedFile. The file is read twice: once to count and once to encode.
+     */
+    public static void encodeFile(String inputFile, String encodedFile) {
+        try (MappedFile in = new MappedFile(inputFile)) {
+            long[] counts = new long[CONTEXTS << 8];
+            int context = 0;
+            for (long position = 0; position < in.size(); position += in.getRegionSize()) {
+                context = addContextCounts(counts, in.map(position), context);
+            }
+            ContextHuffman model = fromCounts(counts);
+            long[] table = model.encodingTable();
+
+            try (BitOutputStream out = new BitOutputStream(new FileOutputStream(encodedFile))) {
+                model.writeHeader(out, in.size());
+                context = 0;
+                for (long position = 0; position < in.size(); position += in.getRegionSize()) {
+                    context = model.encode(in.map(position), table, context, out);
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    // Counts every byte left in region under the byte before it, returns the last byte
+    private static int addContextCounts(long[] counts, ByteBuffer region, int context) {
+        for (int i = region.position(), end = region.limit(); i < end; i++) {
+            int symbol = region.get(i) & 0xFF;
+            counts[(context << 8) | symbol]++;
+            context = symbol;
+        }
+        return context;
+    }
+
+    // Packed code of every (context << 8) | symbol, with fallback codes filled in
+    private long[] encodingTable() {
+        long[] table = new long[CONTEXTS << 8];
+        for (int context = 0; context < CONTEXTS; context++) {
+            CodeTable row = (codes[context] != null ? codes[context] : fallback).getCodeTable();
+            for (int symbol = 0; symbol < row.size(); symbol++) {
+                table[(context << 8) | symbol] = row.packed(symbol);
+            }
+        }
+        return table;
+    }
+
+    private int encode(ByteBuffer region, long[] table, int context, BitOutputStream out) throws IOException {
+        for (int i = region.position(), end = region.limit(); i < end; i++) {
+            int symbol = region.get(i) & 0xFF;
+            long packed = table[(context << 8) | symbol];
+            out.writeBits(CodeTable.code(packed), CodeTable.length(packed));
+            context = symbol;
+        }
+        return context;
+    }
+
+    private void writeHeader(BitOutputStream out, long symbolCount) throws IOException {
+        HuffmanFormat.writeFormat(out, HuffmanFormat.CONTEXT);
+        fallback.writeHeader(out);
+        for (int first = 0; first < CONTEXTS; first += 8) {
+            int bits = 0;
+            for (int context = first; context < first + 8; context++) {
+                bits = (bits << 1) | (codes[context] != null ? 1 : 0);
+            }
+            out.writeBits(bits, 8);
+        }
+        for (CanonicalCode code : codes) {
+            if (code != null) code.writeHeader(out);
+        }
+        out.writeBits(symbolCount >>> 32, 32);
+        out.writeBits(symbolCount & 0xFFFFFFFFL, 32);
+    }
+
+    /**
+     * Decodes the rest of a CONTEXT stream to out.
+     *
+     * @param in The encoded stream, positioned right after the format byte
+     * @param out Where to write the decoded bytes
+     */
+    public static void decode(BitInputStream in, OutputStream out) throws IOException {
+        CanonicalCode fallback = CanonicalCode.readHeader(in);
+        boolean[] hasCode = new boolean[CONTEXTS];
+        for (int first = 0; first < CONTEXTS; first += 8) {
+            if (in.fill() < 8) throw new IOException("Truncated header");
+            int bits = (int) in.readBits(8);
+            for (int i = 0; i < 8; i++) {
+                hasCode[first + i] = ((bits >>> (7 - i)) & 1) == 1;
+            }
+        }
+        CanonicalCode[] codes = new CanonicalCode[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            if (hasCode[context]) codes[context] = CanonicalCode.readHeader(in);
+        }
+        if (in.fill() < 56) throw new IOException("Truncated header");
+        long symbolCount = (in.readBits(32) << 32) | in.readBits(32);
+
+        new ContextHuffman(fallback, codes).decode(in, out, symbolCount);
+    }
+
+    private void decode(BitInputStream in, OutputStream out, long symbolCount) throws IOException {
+        // Table 0 is the fallback's, then one per context with its own code
+        int[] offsets = new int[CONTEXTS];
+        FlatTree[] trees = new FlatTree[CONTEXTS];
+        int tableCount = 1;
+        for (CanonicalCode code : codes) {
+            if (code != null) tableCount++;
+        }
+        int[] tables = new int[tableCount << LOOKUP_BITS];
+        fillTable(tables, 0, fallback);
+        FlatTree fallbackTree = fallback.getMaxLength() > LOOKUP_BITS ? FlatTree.fromTree(fallback.toTree()) : null;
+
+        int next = 1;
+        for (int context = 0; context < CONTEXTS; context++) {
+            CanonicalCode code = codes[context];
+            if (code == null) {
+                trees[context] = fallbackTree;
+                continue;
+            }
+            offsets[context] = next << LOOKUP_BITS;
+            fillTable(tables, offsets[context], code);
+            if (code.getMaxLength() > LOOKUP_BITS) trees[context] = FlatTree.fromTree(code.toTree());
+            next++;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int written = 0;
+        int context = 0;
+        for (long i = 0; i < symbolCount; i++) {
+            int available = in.fill();
+            int entry = tables[offsets[context] + (int) in.peek(LOOKUP_BITS)];
+            int length = entry & 0xFF;
+            if (length != 0 && length <= available) {
+                in.skip(length);
+                context = entry >>> 8;
+            }
+            else {
+                context = walk(trees[context], in);
+            }
+
+            buffer[written++] = (byte) context;
+            if (written == buffer.length) {
+                out.write(buffer, 0, written);
+                written = 0;
+            }
+        }
+        out.write(buffer, 0, written);
+    }
+
+    // Stores (symbol << 8) | length at every index of the table that starts with the symbol's code
+    private static void fillTable(int[] tables, int offset, CanonicalCode code) {
+        CodeTable row = code.getCodeTable();
+        for (int symbol = 0; symbol < row.size(); symbol++) {
+            long packed = row.packed(symbol);
+            int length = CodeTable.length(packed);
+            if (length == 0 || length > LOOKUP_BITS) continue;
+
+            int first = offset + ((int) CodeTable.code(packed) << (LOOKUP_BITS - length));
+            Arrays.fill(tables, first, first + (1 << (LOOKUP_BITS - length)), (symbol << 8) | length);
+        }
+    }
+
+    // Follows bits down the tree to a leaf for codes longer than the table
+    private static int walk(FlatTree tree, BitInputStream in) throws IOException {
+        if (tree == null) throw new IOException("Invalid code");
+        int symbol = tree.walk(0, in);
+        if (symbol < 0) throw new IOException("Stream ended early");
+        return symbol;
+    }
+}
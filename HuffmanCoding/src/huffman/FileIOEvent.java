@@ -0,0 +1,27 @@
+package huffman;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encoding or decoding a whole file, from opening it to closing the output.
+ */
+@Name("huffman.FileIO")
+@Label("File I/O")
+@Description("A file encoded or decoded by HuffmanCoding")
+public class FileIOEvent extends HuffmanEvent {
+    @Label("Operation")
+    String operation;
+
+    @Label("Input File")
+    String inputFile;
+
+    @Label("Output File")
+    String outputFile;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
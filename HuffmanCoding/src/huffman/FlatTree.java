@@ -0,0 +1,90 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class stores a huffman coding tree in one int array in breadth first order,
+ * so walking it reads neighbouring ints instead of chasing TreeNode and CharFreq
+ * references around the heap. The two children of a node are always stored next to
+ * each other: an internal node holds the index of its left child, with the right
+ * child right after it, and a leaf holds ~symbol, which is negative. The root is
+ * at index 0.
+ *
+ * The decoders use it for codes too long for their lookup tables.
+ */
+public class FlatTree {
+    private final int[] nodes;
+
+    private FlatTree(int[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Copies a tree such as huffmanRoot into the flat layout.
+     *
+     * @param root The root of a huffman coding tree, every internal node with two children
+     * @return The flat copy
+     */
+    public static FlatTree fromTree(TreeNode root) {
+        // The queue doubles as the list of nodes in breadth first order
+        TreeNode[] queue = new TreeNode[64];
+        int[] nodes = new int[64];
+        queue[0] = root;
+        int tail = 1;
+
+        for (int i = 0; i < tail; i++) {
+            TreeNode node = queue[i];
+            if (node.getLeft() == null) {
+                nodes[i] = ~node.getData().getCharacter();
+                continue;
+            }
+            if (node.getRight() == null) {
+                throw new IllegalArgumentException("Every internal node needs two children");
+            }
+            if (tail + 2 > queue.length) {
+                queue = Arrays.copyOf(queue, 2 * queue.length);
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            }
+            nodes[i] = tail;
+            queue[tail++] = node.getLeft();
+            queue[tail++] = node.getRight();
+        }
+        return new FlatTree(Arrays.copyOf(nodes, tail));
+    }
+
+    public int size() { return nodes.length; }
+
+    public boolean isLeaf(int node) { return nodes[node] < 0; }
+
+    // Index of the left (bit 0) or right (bit 1) child of an internal node
+    public int child(int node, int bit) { return nodes[node] + bit; }
+
+    public int symbol(int leaf) { return ~nodes[leaf]; }
+
+    /**
+     * Decodes one symbol by following bits from node down to a leaf. The bits are
+     * taken from the stream's window up to 56 at a time instead of one readBit each.
+     *
+     * @param node Where to start, the root (0) or a node part way down a code
+     * @param in The encoded bits
+     * @return The symbol of the leaf reached, or -1 if the bits run out first
+     */
+    public int walk(int node, BitInputStream in) throws IOException {
+        int[] nodes = this.nodes;
+        int next = nodes[node];
+        while (next >= 0) {
+            int available = Math.min(in.fill(), 56);
+            if (available == 0) return -1;
+
+            long bits = in.peek(available);
+            int used = 0;
+            while (next >= 0 && used < available) {
+                used++;
+                next = nodes[next + (int) ((bits >>> (available - used)) & 1)];
+            }
+            in.skip(used);
+        }
+        return ~next;
+    }
+}
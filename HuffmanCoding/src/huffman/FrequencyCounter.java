@@ -0,0 +1,100 @@
+package huffman;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class counts how often each character occurs in a file. Counts live in a
+ * primitive long array indexed by the character itself, so the whole file is
+ * counted in one pass without creating any objects per character read.
+ */
+public class FrequencyCounter {
+    // One slot for every possible char, so no input can index out of bounds
+    public static final int CHAR_ALPHABET = Character.MAX_VALUE + 1;
+
+    // Every value of a byte, read as unsigned
+    public static final int BYTE_ALPHABET = 256;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Only static helpers, don't instantiate
+    private FrequencyCounter() { }
+
+    /**
+     * Reads the file in blocks of chars (decoded as UTF-8, the same way StdIn does)
+     * and counts every character.
+     *
+     * @param filename The file to count
+     * @return Array of size CHAR_ALPHABET where index c holds the count of character c
+     * @throws UncheckedIOException If the file can't be read, so it is never mistaken for an empty one
+     */
+    public static long[] countChars(String filename) {
+        long[] counts = new long[CHAR_ALPHABET];
+        char[] buffer = new char[BUFFER_SIZE];
+
+        try (Reader in = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8)) {
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    counts[buffer[i]]++;
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts every byte value in the file, reading it through memory mapped regions
+     * so files larger than 2 GB are counted without copying them onto the heap.
+     *
+     * @param filename The file to count
+     * @return Array of size BYTE_ALPHABET where index b holds the count of byte value b
+     * @throws UncheckedIOException If the file can't be read
+     */
+    public static long[] countBytes(String filename) {
+        long[] counts = new long[BYTE_ALPHABET];
+
+        try (MappedFile file = new MappedFile(filename)) {
+            for (long position = 0; position < file.size(); position += file.getRegionSize()) {
+                addBytes(counts, file.map(position));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + filename, e);
+        }
+        return counts;
+    }
+
+    // Adds every byte left in region to counts
+    static void addBytes(long[] counts, ByteBuffer region) {
+        for (int i = region.position(), end = region.limit(); i < end; i++) {
+            counts[region.get(i) & 0xFF]++;
+        }
+    }
+
+    /**
+     * Counts every byte value in part of an array.
+     *
+     * @return Array of size BYTE_ALPHABET where index b holds the count of byte value b
+     */
+    public static long[] countBytes(byte[] data, int offset, int length) {
+        long[] counts = new long[BYTE_ALPHABET];
+        addBytes(counts, data, offset, length);
+        return counts;
+    }
+
+    // Adds the bytes in data[offset, offset + length) to counts
+    static void addBytes(long[] counts, byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package huffman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class holds the symbols of a histogram sorted by frequency, with their exact
+ * long counts in parallel primitive arrays. Trees are merged on these integer
+ * counts, so every JVM builds exactly the same tree from the same input; the
+ * double probabilities CharFreq shows are only worked out (count / total) when
+ * asked for.
+ *
+ * Symbols are sorted by count and then by symbol, the same order CharFreq sorts
+ * in. Symbols with a count of 0 are left out, and if only one symbol occurs the
+ * next symbol is added with a count of 0, like makeSortedList always did.
+ */
+public class FrequencyModel {
+    private final int alphabetSize;
+    private final int[] symbols;
+    private final long[] counts;
+    private final long total;
+
+    /**
+     * @param histogram Count of every symbol, indexed by symbol
+     */
+    public FrequencyModel(long[] histogram) {
+        alphabetSize = histogram.length;
+        int symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, alphabetSize - 1));
+        long symbolMask = (1L << symbolBits) - 1;
+
+        // Pack (count, symbol) into one long so a primitive sort orders both
+        long[] keys = new long[histogram.length];
+        int n = 0;
+        long sum = 0;
+        for (int symbol = 0; symbol < histogram.length; symbol++) {
+            if (histogram[symbol] == 0) continue;
+            if (histogram[symbol] > Long.MAX_VALUE >>> symbolBits) {
+                throw new IllegalArgumentException("Count of symbol " + symbol + " is too large");
+            }
+            keys[n++] = (histogram[symbol] << symbolBits) | symbol;
+            sum += histogram[symbol];
+        }
+        if (n == 1) keys[n++] = ((keys[0] & symbolMask) + 1) % alphabetSize;
+        Arrays.sort(keys, 0, n);
+
+        symbols = new int[n];
+        counts = new long[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = (int) (keys[i] & symbolMask);
+            counts[i] = keys[i] >>> symbolBits;
+        }
+        total = sum;
+    }
+
+    // Number of symbols in the model, including the padding symbol
+    public int size() { return symbols.length; }
+
+    public int getAlphabetSize() { return alphabetSize; }
+    public int getSymbol(int i) { return symbols[i]; }
+    public long getCount(int i) { return counts[i]; }
+    public long getTotal() { return total; }
+
+    /**
+     * Shannon entropy of the whole histogram in bits: the fewest bits any code
+     * could use for it.
+     */
+    public double getEntropyBits() {
+        double bits = 0;
+        for (long count : counts) {
+            if (count > 0) bits += count * (Math.log((double) total / count) / Math.log(2));
+        }
+        return bits;
+    }
+
+    // Probability of the i-th symbol, derived from the counts on demand
+    public double getProbability(int i) {
+        return (double) counts[i] / total;
+    }
+
+    /**
+     * @return A new list of CharFreq objects in model order, with their probabilities
+     */
+    public ArrayList<CharFreq> toCharFreqList() {
+        ArrayList<CharFreq> list = new ArrayList<CharFreq>(symbols.length);
+        for (int i = 0; i < symbols.length; i++) {
+            list.add(new CharFreq((char) symbols[i], getProbability(i)));
+        }
+        return list;
+    }
+
+    /**
+     * Merges the counts into a huffman coding tree with integer weights, then turns
+     * it into TreeNode objects. Each node's CharFreq gets its weight divided by the
+     * total as its probability.
+     *
+     * @return The root, or null if the model has fewer than two symbols
+     */
+    public TreeNode buildTree() {
+        if (symbols.length < 2) return null;
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        ArrayTreeBuilder builder = new ArrayTreeBuilder(symbols.length);
+        int root = builder.buildSorted(symbols, counts, symbols.length);
+
+        // Children are numbered before their parents, so one pass upward links everything
+        TreeNode[] nodes = new TreeNode[root + 1];
+        for (int node = 0; node <= root; node++) {
+            double probability = (double) builder.getWeight(node) / total;
+            if (builder.isLeaf(node)) {
+                nodes[node] = new TreeNode(new CharFreq((char) builder.getSymbol(node), probability), null, null);
+            }
+            else {
+                nodes[node] = new TreeNode(new CharFreq(null, probability),
+                        nodes[builder.getLeft(node)], nodes[builder.getRight(node)]);
+            }
+        }
+        if (event.shouldCommit()) TreeBuildEvent.commit(event, builder);
+        return nodes[root];
+    }
+
+    /**
+     * Builds the tree the way makeTree did before the counts were kept: the same two
+     * queue merge, but on the double probabilities of toCharFreqList. Rounding makes
+     * a few ties go the other way, so files written without a header by that version
+     * can only be decoded with this tree.
+     *
+     * @return The root, or null if the model has fewer than two symbols
+     */
+    TreeNode buildLegacyTree() {
+        if (symbols.length < 2) return null;
+        ArrayList<CharFreq> sortedCharFreqList = toCharFreqList();
+        Queue<TreeNode> source = new Queue<TreeNode>();
+        Queue<TreeNode> target = new Queue<TreeNode>();
+        for (CharFreq charFreq : sortedCharFreqList) {
+            source.enqueue(new TreeNode(charFreq, null, null));
+        }
+
+        // Take the smaller front each time, the leaf on a tie, until one tree is left
+        while (source.size() + target.size() > 1) {
+            TreeNode first = dequeueSmaller(source, target);
+            TreeNode second = dequeueSmaller(source, target);
+            CharFreq merged = new CharFreq(null, first.getData().getProbOcc() + second.getData().getProbOcc());
+            target.enqueue(new TreeNode(merged, first, second));
+        }
+        return target.peek();
+    }
+
+    private static TreeNode dequeueSmaller(Queue<TreeNode> source, Queue<TreeNode> target) {
+        if (source.isEmpty()) return target.dequeue();
+        if (target.isEmpty()) return source.dequeue();
+        if (source.peek().getData().getProbOcc() <= target.peek().getData().getProbOcc()) return source.dequeue();
+        return target.dequeue();
+    }
+}
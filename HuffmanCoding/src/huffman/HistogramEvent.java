@@ -0,0 +1,17 @@
+package huffman;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Counting the symbols of a file. The ratio is the one the entropy of the
+ * histogram predicts, the best any code could reach.
+ */
+@Name("huffman.Histogram")
+@Label("Histogram Build")
+@Description("Symbols of a file counted by makeSortedList")
+public class HistogramEvent extends HuffmanEvent {
+    @Label("Distinct Symbols")
+    int distinctSymbols;
+}
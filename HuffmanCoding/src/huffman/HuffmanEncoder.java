@@ -0,0 +1,436 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class encodes a text file in a single streaming pass. Characters are read
+ * in fixed size blocks, their packed codes are looked up in a CodeTable, and the
+ * bits go straight into a BitOutputStream, so memory use does not depend on the
+ * size of the input.
+ */
+public class HuffmanEncoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Coding has to save at least this fraction of the input, or the input is stored
+    private static final double MIN_SAVING = 1.0 / 32;
+
+    // Only static helpers, don't instantiate
+    private HuffmanEncoder() { }
+
+    /**
+     * Encodes inputFile into encodedFile: a header holding the canonical code lengths,
+     * then the code bits preceded by zeroes and a single 1 (the same padding
+     * writeBitString uses) so the file is a whole number of bytes.
+     *
+     * @param inputFile The text file to encode
+     * @param encodedFile The file to write to (doesn't need to exist yet)
+     * @param code The canonical code of every character in inputFile
+     * @param counts Histogram of inputFile, used to work out the padding up front
+     */
+    public static void encodeFile(String inputFile, String encodedFile, CanonicalCode code, long[] counts) {
+        CodeTable codes = code.getCodeTable();
+        try (Reader in = new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8);
+             BitOutputStream out = new BitOutputStream(new FileOutputStream(encodedFile))) {
+
+            writeHeader(out, code, counts);
+            char[] block = new char[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(block, 0, block.length)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    long packed = codes.packed(block[i]);
+                    out.writeBits(CodeTable.code(packed), CodeTable.length(packed));
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    /**
+     * Same as encodeFile, but reads inputFile as raw bytes, so code must cover
+     * byte values 0 to 255 that occur in the file. The input is read through
+     * memory mapped regions, so it may be larger than 2 GB.
+     */
+    public static void encodeBytesFile(String inputFile, String encodedFile, CanonicalCode code, long[] counts) {
+        try {
+            writeBytesFile(inputFile, encodedFile, code, counts);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    /**
+     * Counts inputFile as raw bytes and encodes it into a CANONICAL file, or stores
+     * it if shouldStore says so. This is what the byte mode steps of HuffmanCoding
+     * write, but errors are thrown to the caller instead of printed.
+     *
+     * @param inputFile The file to encode, read through memory mapped regions
+     * @param encodedFile The file to write to (doesn't need to exist yet)
+     * @throws IOException If either file can't be read or written
+     */
+    public static void encodeBytes(String inputFile, String encodedFile) throws IOException {
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        long size;
+        try (MappedFile in = new MappedFile(inputFile)) {
+            size = in.size();
+            for (long position = 0; position < size; position += in.getRegionSize()) {
+                FrequencyCounter.addBytes(counts, in.map(position));
+            }
+        }
+
+        if (shouldStore(counts, size)) writeStoredFile(inputFile, encodedFile);
+        else writeBytesFile(inputFile, encodedFile, CanonicalCode.fromCounts(counts), counts);
+    }
+
+    private static void writeBytesFile(String inputFile, String encodedFile, CanonicalCode code, long[] counts)
+            throws IOException {
+        try (MappedFile in = new MappedFile(inputFile);
+             BitOutputStream out = new BitOutputStream(new FileOutputStream(encodedFile))) {
+
+            writeHeader(out, code, counts);
+            for (long position = 0; position < in.size(); position += in.getRegionSize()) {
+                encode(in.map(position), code.getCodeTable(), out);
+            }
+        }
+    }
+
+    /**
+     * Estimates from the histogram alone whether coding a block pays off. No code
+     * beats the entropy, so the estimate is the entropy plus the canonical header;
+     * if that doesn't save at least MIN_SAVING of the raw size, the block is better
+     * stored, since decoding it would cost CPU for next to nothing.
+     *
+     * @param counts Histogram of the block
+     * @param rawBytes Size of the block as stored, in bytes
+     * @return true if the block should be stored raw
+     */
+    public static boolean shouldStore(long[] counts, long rawBytes) {
+        FrequencyModel model = new FrequencyModel(counts);
+        double headerBits = 8 * (2 + 1 + 2 * model.size());
+        return model.getEntropyBits() + headerBits > 8 * rawBytes * (1 - MIN_SAVING);
+    }
+
+    /**
+     * The shouldStore test for one block of a file made of blocks. A block whose
+     * code came out no smaller than the block itself is stored too.
+     *
+     * @param counts Histogram of the block
+     * @param symbols Number of symbols in the block, one byte each when stored
+     * @param codedBytes Size of the block's code bits, in bytes
+     */
+    static boolean shouldStoreBlock(long[] counts, int symbols, long codedBytes) {
+        return codedBytes >= symbols || shouldStore(counts, symbols);
+    }
+
+    /**
+     * Writes inputFile to encodedFile unchanged after the marker and STORED format
+     * bytes, letting the channels transfer the bytes.
+     */
+    public static void storeFile(String inputFile, String encodedFile) {
+        try {
+            writeStoredFile(inputFile, encodedFile);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    private static void writeStoredFile(String inputFile, String encodedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             FileOutputStream out = new FileOutputStream(encodedFile)) {
+            out.write(HuffmanFormat.MARKER);
+            out.write(HuffmanFormat.STORED);
+
+            FileChannel target = out.getChannel();
+            long position = 0, size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    /**
+     * Encodes inputFile into encodedFile as a BLOCKED file with a new block every
+     * blockSymbols symbols, so the result can be decoded in parallel or from any
+     * position. The input is read twice: once to work out how many bytes each block
+     * takes for the index, and once to write the blocks. Blocks that shouldStoreBlock
+     * picks are written as raw bytes, and if that is every block, the code in the
+     * header is only a two symbol placeholder.
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write to (doesn't need to exist yet)
+     * @param code The canonical code of every symbol in inputFile
+     * @param blockSymbols Number of symbols per block
+     * @param rawBytes true to read inputFile as bytes, false to read it as UTF-8 text
+     */
+    public static void encodeFileBlocked(String inputFile, String encodedFile, CanonicalCode code,
+            int blockSymbols, boolean rawBytes) {
+        if (blockSymbols < 1) throw new IllegalArgumentException("blockSymbols must be positive");
+        CodeTable codes = code.getCodeTable();
+        char[] block = new char[BUFFER_SIZE];
+
+        try {
+            // First pass: add up the code lengths and the histogram of every block
+            int[] symbolCounts = new int[16];
+            int[] byteLengths = new int[16];
+            boolean[] stored = new boolean[16];
+            long[] blockCounts = new long[codes.size()];
+            int blocks = 0, symbols = 0;
+            long bits = 0;
+            try (SymbolReader in = new SymbolReader(inputFile, rawBytes)) {
+                int n;
+                while ((n = in.read(block)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        bits += CodeTable.length(codes.packed(block[i]));
+                        blockCounts[block[i]]++;
+                        if (++symbols == blockSymbols) {
+                            if (blocks == symbolCounts.length) {
+                                symbolCounts = Arrays.copyOf(symbolCounts, blocks * 2);
+                                byteLengths = Arrays.copyOf(byteLengths, blocks * 2);
+                                stored = Arrays.copyOf(stored, blocks * 2);
+                            }
+                            symbolCounts[blocks] = symbols;
+                            stored[blocks] = shouldStoreBlock(blockCounts, symbols, (bits + 7) / 8);
+                            byteLengths[blocks] = stored[blocks] ? symbols : (int) ((bits + 7) / 8);
+                            blocks++;
+                            Arrays.fill(blockCounts, 0);
+                            symbols = 0;
+                            bits = 0;
+                        }
+                    }
+                }
+            }
+            if (symbols > 0) {
+                symbolCounts = Arrays.copyOf(symbolCounts, blocks + 1);
+                byteLengths = Arrays.copyOf(byteLengths, blocks + 1);
+                stored = Arrays.copyOf(stored, blocks + 1);
+                symbolCounts[blocks] = symbols;
+                stored[blocks] = shouldStoreBlock(blockCounts, symbols, (bits + 7) / 8);
+                byteLengths[blocks] = stored[blocks] ? symbols : (int) ((bits + 7) / 8);
+                blocks++;
+            }
+            BlockIndex index = new BlockIndex(Arrays.copyOf(symbolCounts, blocks), Arrays.copyOf(byteLengths, blocks),
+                    Arrays.copyOf(stored, blocks));
+
+            boolean allStored = true;
+            for (int i = 0; i < blocks; i++) {
+                allStored &= stored[i];
+            }
+
+            // Second pass: write every block, each starting on a byte boundary
+            try (SymbolReader in = new SymbolReader(inputFile, rawBytes);
+                 BitOutputStream out = new BitOutputStream(new FileOutputStream(encodedFile))) {
+                HuffmanFormat.writeFormat(out, HuffmanFormat.BLOCKED);
+                (allStored ? CanonicalCode.fromCounts(new long[2]) : code).writeHeader(out);
+                index.write(out);
+
+                int current = 0;
+                symbols = 0;
+                int n;
+                while ((n = in.read(block)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        if (stored[current]) {
+                            out.writeBits(block[i] & 0xFF, 8);
+                        }
+                        else {
+                            long packed = codes.packed(block[i]);
+                            out.writeBits(CodeTable.code(packed), CodeTable.length(packed));
+                        }
+                        if (++symbols == blockSymbols) {
+                            out.padToByte();
+                            symbols = 0;
+                            current++;
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    /**
+     * Encodes inputFile into encodedFile as an INTERLEAVED file: blocks of
+     * blockSymbols symbols, each split into InterleavedDecoder.STREAMS sub-streams
+     * so the decoder can work on all of them at once. Each block is coded into
+     * memory first, since its header needs the length of every sub-stream, and
+     * blocks that shouldStoreBlock picks are written as raw bytes instead.
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write to (doesn't need to exist yet)
+     * @param code The canonical code of every symbol in inputFile
+     * @param blockSymbols Number of symbols per block
+     * @param rawBytes true to read inputFile as bytes, false to read it as UTF-8 text
+     */
+    public static void encodeFileInterleaved(String inputFile, String encodedFile, CanonicalCode code,
+            int blockSymbols, boolean rawBytes) {
+        if (blockSymbols < 1) throw new IllegalArgumentException("blockSymbols must be positive");
+        CodeTable codes = code.getCodeTable();
+        char[] block = new char[BUFFER_SIZE];
+        byte[] raw = new byte[Math.min(blockSymbols, BUFFER_SIZE)];
+        long[] blockCounts = new long[codes.size()];
+
+        ByteArrayOutputStream[] streamBytes = new ByteArrayOutputStream[InterleavedDecoder.STREAMS];
+        BitOutputStream[] streams = new BitOutputStream[InterleavedDecoder.STREAMS];
+        for (int s = 0; s < streams.length; s++) {
+            streamBytes[s] = new ByteArrayOutputStream();
+            streams[s] = new BitOutputStream(streamBytes[s]);
+        }
+
+        try (SymbolReader in = new SymbolReader(inputFile, rawBytes);
+             BitOutputStream out = new BitOutputStream(new FileOutputStream(encodedFile))) {
+            HuffmanFormat.writeFormat(out, HuffmanFormat.INTERLEAVED);
+            code.writeHeader(out);
+
+            int symbols = 0;
+            int n;
+            while ((n = in.read(block)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    long packed = codes.packed(block[i]);
+                    streams[symbols & (InterleavedDecoder.STREAMS - 1)]
+                            .writeBits(CodeTable.code(packed), CodeTable.length(packed));
+                    blockCounts[block[i]]++;
+                    if (symbols == raw.length) raw = Arrays.copyOf(raw, Math.min(2 * raw.length, blockSymbols));
+                    raw[symbols] = (byte) block[i];
+                    if (++symbols == blockSymbols) {
+                        writeInterleavedBlock(out, symbols, streams, streamBytes, raw, blockCounts);
+                        symbols = 0;
+                    }
+                }
+            }
+            if (symbols > 0) writeInterleavedBlock(out, symbols, streams, streamBytes, raw, blockCounts);
+            out.writeBits(0, 32);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    // Writes the block header and the sub-streams, or the raw bytes if the block is
+    // better stored, then empties the sub-streams and counts for the next block
+    private static void writeInterleavedBlock(BitOutputStream out, int symbols, BitOutputStream[] streams,
+            ByteArrayOutputStream[] streamBytes, byte[] raw, long[] blockCounts) throws IOException {
+        BlockEncodeEvent event = new BlockEncodeEvent();
+        event.begin();
+        long encoded = 0;
+        for (int s = 0; s < streams.length; s++) {
+            streams[s].flush();
+            encoded += streamBytes[s].size();
+        }
+
+        boolean stored = shouldStoreBlock(blockCounts, symbols, encoded);
+        if (stored) {
+            out.writeBits((symbols | HuffmanFormat.STORED_BLOCK) & 0xFFFFFFFFL, 32);
+            for (int i = 0; i < symbols; i++) {
+                out.writeBits(raw[i] & 0xFF, 8);
+            }
+            for (ByteArrayOutputStream bytes : streamBytes) bytes.reset();
+        }
+        else {
+            out.writeBits(symbols, 32);
+            for (ByteArrayOutputStream bytes : streamBytes) {
+                out.writeBits(bytes.size(), 32);
+            }
+            for (ByteArrayOutputStream bytes : streamBytes) {
+                byte[] b = bytes.toByteArray();
+                for (int i = 0; i < b.length; i++) {
+                    out.writeBits(b[i] & 0xFF, 8);
+                }
+                bytes.reset();
+            }
+        }
+        Arrays.fill(blockCounts, 0);
+
+        if (event.shouldCommit()) {
+            event.set(symbols, symbols, HuffmanEvent.ratio(stored ? symbols : encoded, symbols));
+            event.stored = stored;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes the code of every byte in data[offset, offset + length), read as
+     * unsigned values.
+     */
+    public static void encode(byte[] data, int offset, int length, CodeTable codes, BitOutputStream out)
+            throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            long packed = codes.packed(data[i] & 0xFF);
+            out.writeBits(CodeTable.code(packed), CodeTable.length(packed));
+        }
+    }
+
+    /**
+     * Writes the code of every byte left in region, read as unsigned values.
+     */
+    public static void encode(ByteBuffer region, CodeTable codes, BitOutputStream out) throws IOException {
+        for (int i = region.position(), end = region.limit(); i < end; i++) {
+            long packed = codes.packed(region.get(i) & 0xFF);
+            out.writeBits(CodeTable.code(packed), CodeTable.length(packed));
+        }
+    }
+
+    /**
+     * Writes the format bytes, the canonical code lengths and the padding that
+     * brings the code bits for counts to a whole number of bytes.
+     */
+    static void writeHeader(BitOutputStream out, CanonicalCode code, long[] counts) throws IOException {
+        HuffmanFormat.writeFormat(out, HuffmanFormat.CANONICAL);
+        code.writeHeader(out);
+        out.writePadding(code.getCodeTable().totalBits(counts));
+    }
+
+    /**
+     * Reads a file in blocks of symbols, either UTF-8 chars or bytes widened to chars.
+     */
+    private static class SymbolReader implements Closeable {
+        private final Reader chars;
+        private final InputStream bytes;
+        private final byte[] raw;
+
+        SymbolReader(String filename, boolean rawBytes) throws IOException {
+            if (rawBytes) {
+                chars = null;
+                bytes = new FileInputStream(filename);
+                raw = new byte[BUFFER_SIZE];
+            }
+            else {
+                chars = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8);
+                bytes = null;
+                raw = null;
+            }
+        }
+
+        // Fills block with up to block.length symbols, returns how many or -1 at the end
+        int read(char[] block) throws IOException {
+            if (chars != null) return chars.read(block, 0, block.length);
+
+            int n = bytes.read(raw, 0, Math.min(raw.length, block.length));
+            for (int i = 0; i < n; i++) {
+                block[i] = (char) (raw[i] & 0xFF);
+            }
+            return n;
+        }
+
+        public void close() throws IOException {
+            if (chars != null) chars.close();
+            else bytes.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package huffman;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Fields shared by the JDK Flight Recorder events of every huffman coding phase.
+ * Each phase starts its event with begin() and only fills in and commits it if
+ * shouldCommit() says the event is being recorded, so with recording off an event
+ * costs nothing and the JIT removes the object altogether.
+ */
+@Category("Huffman Coding")
+public abstract class HuffmanEvent extends Event {
+    @Label("Block Size")
+    @Description("Bytes of input the phase worked on")
+    @DataAmount
+    long blockSize;
+
+    @Label("Symbol Count")
+    long symbolCount;
+
+    @Label("Ratio")
+    @Description("Output size divided by input size, 0 if the phase has no output yet")
+    double ratio;
+
+    void set(long blockSize, long symbolCount, double ratio) {
+        this.blockSize = blockSize;
+        this.symbolCount = symbolCount;
+        this.ratio = ratio;
+    }
+
+    // Output over input, 0 for empty input
+    static double ratio(long outputBytes, long inputBytes) {
+        return inputBytes == 0 ? 0 : (double) outputBytes / inputBytes;
+    }
+}
@@ -0,0 +1,69 @@
+package huffman;
+
+import java.io.IOException;
+
+/**
+ * This class holds the constants that identify the layout of an encoded file.
+ * Files written by writeBitString start with padding, so their first byte always
+ * contains a 1. Newer files start with a zero byte instead, followed by a byte
+ * naming the format, which lets decode tell the two apart.
+ */
+public final class HuffmanFormat {
+    // First byte of every file that has a header
+    public static final int MARKER = 0x00;
+
+    // Padded bits with no header, decoding needs the original tree
+    public static final int LEGACY = -1;
+
+    // Canonical code lengths followed by padded bits
+    public static final int CANONICAL = 1;
+
+    // Canonical code lengths, a block index, then independently decodable blocks
+    public static final int BLOCKED = 2;
+
+    // One pass adaptive huffman bits, ending with an end of stream symbol
+    public static final int ADAPTIVE = 3;
+
+    // A saved Codebook: canonical code lengths only, no encoded bits
+    public static final int CODEBOOK = 4;
+
+    // Canonical code lengths, then blocks split into interleaved sub-streams
+    public static final int INTERLEAVED = 5;
+
+    // Order-1 model: a fallback code, a code per context that pays for itself, then bits
+    public static final int CONTEXT = 6;
+
+    // Blocks written by HuffmanOutputStream, each with its own code lengths
+    public static final int STREAM = 7;
+
+    // The original bytes, stored because coding them would not have saved space
+    public static final int STORED = 8;
+
+    // Top bit of a block's 32 bit byte length (BLOCKED) or symbol count (INTERLEAVED):
+    // the block holds its symbols as raw bytes instead of code bits
+    public static final int STORED_BLOCK = 0x80000000;
+
+    // Only constants, don't instantiate
+    private HuffmanFormat() { }
+
+    /**
+     * Looks at the start of an encoded stream and consumes the marker and format
+     * bytes if there are any. Legacy files are left untouched.
+     *
+     * @param in The encoded stream, positioned at its first bit
+     * @return The format id, or LEGACY if the file has no header
+     */
+    public static int readFormat(BitInputStream in) throws IOException {
+        if (in.fill() < 16 || in.peek(8) != MARKER) return LEGACY;
+        in.skip(8);
+        return (int) in.readBits(8);
+    }
+
+    /**
+     * Writes the marker and format bytes.
+     */
+    public static void writeFormat(BitOutputStream out, int format) throws IOException {
+        out.writeBits(MARKER, 8);
+        out.writeBits(format, 8);
+    }
+}
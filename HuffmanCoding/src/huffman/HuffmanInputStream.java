@@ -0,0 +1,202 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * This class decompresses a stream written by HuffmanOutputStream as it is read.
+ * One block is decoded at a time into an internal buffer, and each block is read
+ * from the underlying stream with exactly as many bytes as it takes, so nothing
+ * after the end of the compressed stream is consumed and a reader never waits for
+ * bytes the writer hasn't flushed yet.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private byte[] encoded = new byte[0];
+    private byte[] decoded = new byte[0];
+    private int position;
+    private int limit;
+    private boolean started;
+    private boolean ended;
+
+    public HuffmanInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextBlock()) return -1;
+        return decoded[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == limit && !nextBlock()) return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(decoded, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (position < limit || nextBlock())) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    // Bytes left in the decoded block, more may follow
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) { }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    // Decodes the next block into decoded, returns false at the end of the stream
+    private boolean nextBlock() throws IOException {
+        if (ended) return false;
+        if (!started) {
+            if (readByte() != HuffmanFormat.MARKER || readByte() != HuffmanFormat.STREAM) {
+                throw new IOException("Not a huffman stream");
+            }
+            started = true;
+        }
+
+        int count = readInt();
+        if (count == 0) {
+            ended = true;
+            return false;
+        }
+        int length = readInt();
+        int format = readByte();
+        if (count < 0 || length < 0) throw new IOException("Invalid block header");
+
+        if (decoded.length < count) decoded = new byte[count];
+        if (format == HuffmanFormat.STORED) {
+            // Stored bytes go straight into the buffer the reader copies from
+            if (length != count) throw new IOException("Invalid stored block");
+            BlockDecodeEvent event = new BlockDecodeEvent();
+            event.begin();
+            readFully(decoded, count);
+            commit(event, length, count, true);
+        }
+        else {
+            if (encoded.length < length) encoded = new byte[length];
+            readFully(encoded, length);
+            decodeBlock(encoded, length, format, decoded, count);
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    /**
+     * Decodes one block: either the canonical code lengths followed by count codes,
+     * or count stored bytes.
+     *
+     * @param encoded The encoded block, from index 0
+     * @param length Byte length of the encoded block
+     * @param format CANONICAL or STORED
+     * @param out Where to store the decoded symbols, from index 0
+     * @param count Number of symbols in the block
+     */
+    static void decodeBlock(byte[] encoded, int length, int format, byte[] out, int count) throws IOException {
+        BlockDecodeEvent event = new BlockDecodeEvent();
+        event.begin();
+        if (format == HuffmanFormat.STORED) {
+            if (length != count) throw new IOException("Invalid stored block");
+            System.arraycopy(encoded, 0, out, 0, count);
+        }
+        else if (format == HuffmanFormat.CANONICAL) {
+            BitInputStream bits = new BitInputStream(encoded, 0, length);
+            TableDecoder decoder = CanonicalCode.readHeader(bits).newDecoder();
+            int n = decoder.decode(bits, out, 0, count);
+            if (n != count) throw new IOException("Block ended after " + n + " of " + count + " symbols");
+        }
+        else {
+            throw new IOException("Unknown block format " + format);
+        }
+        commit(event, length, count, format == HuffmanFormat.STORED);
+    }
+
+    private static void commit(BlockDecodeEvent event, int length, int count, boolean stored) {
+        if (event.shouldCommit()) {
+            event.set(length, count, HuffmanEvent.ratio(length, count));
+            event.stored = stored;
+            event.commit();
+        }
+    }
+
+    /**
+     * Decodes the blocks of a STREAM file read through a BitInputStream, for
+     * HuffmanCoding.decode.
+     *
+     * @param in The encoded stream, positioned right after the format byte
+     * @param out Where to write the decoded bytes
+     */
+    static void decodeAll(BitInputStream in, OutputStream out) throws IOException {
+        byte[] encoded = new byte[0];
+        byte[] decoded = new byte[0];
+        while (true) {
+            if (in.fill() < 32) throw new IOException("Truncated block header");
+            int count = (int) in.readBits(32);
+            if (count == 0) break;
+            if (in.fill() < 40) throw new IOException("Truncated block header");
+            int length = (int) in.readBits(32);
+            int format = (int) in.readBits(8);
+            if (count < 0 || length < 0) throw new IOException("Invalid block header");
+
+            if (encoded.length < length) encoded = new byte[length];
+            if (decoded.length < count) decoded = new byte[count];
+            in.readFully(encoded, 0, length);
+            if (format == HuffmanFormat.STORED) {
+                if (length != count) throw new IOException("Invalid stored block");
+                BlockDecodeEvent event = new BlockDecodeEvent();
+                event.begin();
+                out.write(encoded, 0, count);
+                commit(event, length, count, true);
+                continue;
+            }
+            decodeBlock(encoded, length, format, decoded, count);
+            out.write(decoded, 0, count);
+        }
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) throw new EOFException("Stream ended inside a block header");
+        return b;
+    }
+
+    private int readInt() throws IOException {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int offset = 0;
+        while (offset < len) {
+            int n = in.read(b, offset, len - offset);
+            if (n == -1) throw new EOFException("Stream ended inside a block");
+            offset += n;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package huffman;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class counts what every HuffmanCoding in the JVM does: how often each step
+ * of the pipeline ran and the nanoseconds it took, symbols counted, bytes in and
+ * out of encode and decode, and for the last code built, its average code length
+ * next to the Shannon entropy (the lower bound any code can reach) and the depth
+ * of its tree.
+ *
+ * All counters live in one AtomicLongArray, so recording is a few atomic adds with
+ * no allocation and no locking. The counters run whether or not anyone reads them;
+ * call register() to expose the one instance on the platform MBean server as
+ * huffman:type=HuffmanMetrics, and unregister() to take it off again. snapshot()
+ * copies every counter into a Snapshot for use in code.
+ */
+public class HuffmanMetrics implements HuffmanMetricsMBean {
+    public static final String OBJECT_NAME = "huffman:type=HuffmanMetrics";
+
+    // Pipeline steps, used as indexes into the counters
+    public static final int MAKE_SORTED_LIST = 0;
+    public static final int MAKE_TREE = 1;
+    public static final int MAKE_ENCODINGS = 2;
+    public static final int ENCODE = 3;
+    public static final int DECODE = 4;
+    private static final int STAGES = 5;
+
+    // Counter layout: calls and nanos per stage, then the totals and the last code's gauges
+    private static final int CALLS = 0;
+    private static final int NANOS = STAGES;
+    private static final int SYMBOLS_COUNTED = 2 * STAGES;
+    private static final int ENCODE_BYTES_IN = SYMBOLS_COUNTED + 1;
+    private static final int ENCODE_BYTES_OUT = SYMBOLS_COUNTED + 2;
+    private static final int DECODE_BYTES_IN = SYMBOLS_COUNTED + 3;
+    private static final int DECODE_BYTES_OUT = SYMBOLS_COUNTED + 4;
+    private static final int AVERAGE_CODE_LENGTH = SYMBOLS_COUNTED + 5;
+    private static final int ENTROPY = SYMBOLS_COUNTED + 6;
+    private static final int TREE_DEPTH = SYMBOLS_COUNTED + 7;
+    private static final int COUNTERS = SYMBOLS_COUNTED + 8;
+
+    private static final HuffmanMetrics INSTANCE = new HuffmanMetrics();
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+    private HuffmanMetrics() { }
+
+    public static HuffmanMetrics get() { return INSTANCE; }
+
+    /**
+     * Registers the instance with the platform MBean server under OBJECT_NAME, so
+     * JConsole or any other JMX client can read it. Does nothing if a HuffmanMetrics
+     * is already registered there, for example by another class loader.
+     *
+     * @return true if this call registered it
+     */
+    public static synchronized boolean register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) return false;
+            server.registerMBean(INSTANCE, name);
+            return true;
+        }
+        catch (JMException e) {
+            System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Removes the MBean added by register(). The counters keep running.
+     *
+     * @return true if it was registered
+     */
+    public static synchronized boolean unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) return false;
+            server.unregisterMBean(name);
+            return true;
+        }
+        catch (JMException e) {
+            System.err.println("Could not unregister " + OBJECT_NAME + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records one run of a pipeline step.
+     *
+     * @param stage One of MAKE_SORTED_LIST, MAKE_TREE, MAKE_ENCODINGS, ENCODE or DECODE
+     * @param nanos How long it took
+     */
+    public void recordStage(int stage, long nanos) {
+        counters.incrementAndGet(CALLS + stage);
+        counters.addAndGet(NANOS + stage, nanos);
+    }
+
+    public void recordSymbolsCounted(long symbols) {
+        counters.addAndGet(SYMBOLS_COUNTED, symbols);
+    }
+
+    public void recordEncode(long bytesIn, long bytesOut) {
+        counters.addAndGet(ENCODE_BYTES_IN, bytesIn);
+        counters.addAndGet(ENCODE_BYTES_OUT, bytesOut);
+    }
+
+    public void recordDecode(long bytesIn, long bytesOut) {
+        counters.addAndGet(DECODE_BYTES_IN, bytesIn);
+        counters.addAndGet(DECODE_BYTES_OUT, bytesOut);
+    }
+
+    /**
+     * Records the last code built: both values in bits per symbol, stored as raw
+     * double bits so they fit the long counters.
+     */
+    public void recordCode(double averageCodeLength, double entropy) {
+        counters.set(AVERAGE_CODE_LENGTH, Double.doubleToRawLongBits(averageCodeLength));
+        counters.set(ENTROPY, Double.doubleToRawLongBits(entropy));
+    }
+
+    /**
+     * Records the depth of the last code built, which is its longest code length.
+     */
+    public void recordTreeDepth(int depth) {
+        counters.set(TREE_DEPTH, depth);
+    }
+
+    public long getMakeSortedListCalls() { return counters.get(CALLS + MAKE_SORTED_LIST); }
+    public long getMakeSortedListNanos() { return counters.get(NANOS + MAKE_SORTED_LIST); }
+    public long getMakeTreeCalls() { return counters.get(CALLS + MAKE_TREE); }
+    public long getMakeTreeNanos() { return counters.get(NANOS + MAKE_TREE); }
+    public long getMakeEncodingsCalls() { return counters.get(CALLS + MAKE_ENCODINGS); }
+    public long getMakeEncodingsNanos() { return counters.get(NANOS + MAKE_ENCODINGS); }
+    public long getEncodeCalls() { return counters.get(CALLS + ENCODE); }
+    public long getEncodeNanos() { return counters.get(NANOS + ENCODE); }
+    public long getDecodeCalls() { return counters.get(CALLS + DECODE); }
+    public long getDecodeNanos() { return counters.get(NANOS + DECODE); }
+
+    public long getSymbolsCounted() { return counters.get(SYMBOLS_COUNTED); }
+    public long getEncodeBytesIn() { return counters.get(ENCODE_BYTES_IN); }
+    public long getEncodeBytesOut() { return counters.get(ENCODE_BYTES_OUT); }
+    public long getDecodeBytesIn() { return counters.get(DECODE_BYTES_IN); }
+    public long getDecodeBytesOut() { return counters.get(DECODE_BYTES_OUT); }
+
+    public double getAverageCodeLength() { return Double.longBitsToDouble(counters.get(AVERAGE_CODE_LENGTH)); }
+    public double getEntropy() { return Double.longBitsToDouble(counters.get(ENTROPY)); }
+    public int getTreeDepth() { return (int) counters.get(TREE_DEPTH); }
+
+    public void reset() {
+        for (int i = 0; i < COUNTERS; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Copies every counter. Counters updated while copying may be from slightly
+     * different moments, but each one is read atomically.
+     */
+    public Snapshot snapshot() {
+        long[] values = new long[COUNTERS];
+        for (int i = 0; i < COUNTERS; i++) {
+            values[i] = counters.get(i);
+        }
+        return new Snapshot(values);
+    }
+
+    /**
+     * The counters at one moment, with the same getters as the MBean.
+     */
+    public static class Snapshot {
+        private final long[] values;
+
+        private Snapshot(long[] values) {
+            this.values = values;
+        }
+
+        public long getCalls(int stage) { return values[CALLS + stage]; }
+        public long getNanos(int stage) { return values[NANOS + stage]; }
+
+        // Average nanoseconds per run of a step, 0 if it never ran
+        public double getAverageNanos(int stage) {
+            return getCalls(stage) == 0 ? 0 : (double) getNanos(stage) / getCalls(stage);
+        }
+
+        public long getSymbolsCounted() { return values[SYMBOLS_COUNTED]; }
+        public long getEncodeBytesIn() { return values[ENCODE_BYTES_IN]; }
+        public long getEncodeBytesOut() { return values[ENCODE_BYTES_OUT]; }
+        public long getDecodeBytesIn() { return values[DECODE_BYTES_IN]; }
+        public long getDecodeBytesOut() { return values[DECODE_BYTES_OUT]; }
+        public double getAverageCodeLength() { return Double.longBitsToDouble(values[AVERAGE_CODE_LENGTH]); }
+        public double getEntropy() { return Double.longBitsToDouble(values[ENTROPY]); }
+        public int getTreeDepth() { return (int) values[TREE_DEPTH]; }
+
+        public String toString() {
+            String[] names = {"makeSortedList", "makeTree", "makeEncodings", "encode", "decode"};
+            StringBuilder s = new StringBuilder();
+            for (int stage = 0; stage < STAGES; stage++) {
+                s.append(String.format("%s: %d calls, %.3f ms total\n", names[stage], getCalls(stage),
+                        getNanos(stage) / 1e6));
+            }
+            s.append(String.format("symbols counted: %d\n", getSymbolsCounted()));
+            s.append(String.format("encode: %d -> %d bytes, decode: %d -> %d bytes\n", getEncodeBytesIn(),
+                    getEncodeBytesOut(), getDecodeBytesIn(), getDecodeBytesOut()));
+            s.append(String.format("last code: %.4f bits/symbol, entropy %.4f bits/symbol, tree depth %d",
+                    getAverageCodeLength(), getEntropy(), getTreeDepth()));
+            return s.toString();
+        }
+    }
+}
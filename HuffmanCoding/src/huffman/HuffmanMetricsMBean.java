@@ -0,0 +1,31 @@
+package huffman;
+
+/**
+ * Management interface of HuffmanMetrics, so the counters can be read (and reset)
+ * from JConsole or any other JMX client. Times are in nanoseconds, code lengths
+ * and entropy in bits per symbol.
+ */
+public interface HuffmanMetricsMBean {
+    long getMakeSortedListCalls();
+    long getMakeSortedListNanos();
+    long getMakeTreeCalls();
+    long getMakeTreeNanos();
+    long getMakeEncodingsCalls();
+    long getMakeEncodingsNanos();
+    long getEncodeCalls();
+    long getEncodeNanos();
+    long getDecodeCalls();
+    long getDecodeNanos();
+
+    long getSymbolsCounted();
+    long getEncodeBytesIn();
+    long getEncodeBytesOut();
+    long getDecodeBytesIn();
+    long getDecodeBytesOut();
+
+    double getAverageCodeLength();
+    double getEntropy();
+    int getTreeDepth();
+
+    void reset();
+}
@@ -0,0 +1,151 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class compresses everything written to it before passing it on, so huffman
+ * coding can sit in any stream pipeline without temp files. Bytes are collected
+ * into blocks, and every full block is encoded with its own canonical code built
+ * from the block's histogram, so memory use is one block no matter how much is
+ * written. HuffmanInputStream reads the result back.
+ *
+ * Layout after the marker and format bytes, for every block: its symbol count and
+ * its encoded byte length as 32 bit numbers, then a byte naming the block's format.
+ * CANONICAL blocks hold the canonical code lengths and the code bits padded with
+ * zeroes to a whole byte; STORED blocks, used when the block's entropy shows coding
+ * wouldn't pay off, hold the bytes as they are. A block with 0 symbols ends the
+ * stream. flush() encodes whatever is buffered as a short block, so the reader can
+ * decode everything written so far.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private final byte[] block;
+    private int size;
+    private boolean started;
+    private boolean finished;
+
+    // Every block's tree is built in the same arrays
+    private final ArrayTreeBuilder builder = new ArrayTreeBuilder(FrequencyCounter.BYTE_ALPHABET);
+
+    // Encoded blocks are built here first, since the block header needs their length
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private final BitOutputStream bits = new BitOutputStream(encoded);
+
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out Where to write the compressed stream
+     * @param blockSize Number of bytes encoded with each code
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize) {
+        super(out);
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be positive");
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) throw new IOException("Stream is finished");
+        if (size == block.length) writeBlock();
+        block[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) throw new IOException("Stream is finished");
+        while (len > 0) {
+            if (size == block.length) writeBlock();
+            int n = Math.min(len, block.length - size);
+            System.arraycopy(b, off, block, size, n);
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Encodes the buffered bytes as a block and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (size > 0) writeBlock();
+        out.flush();
+    }
+
+    /**
+     * Encodes the buffered bytes and writes the end of the stream, without closing
+     * the underlying stream. Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (size > 0 || !started) writeBlock();
+        writeInt(0);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (finished) throw new IOException("Stream is finished");
+        if (!started) {
+            out.write(HuffmanFormat.MARKER);
+            out.write(HuffmanFormat.STREAM);
+            started = true;
+        }
+        if (size == 0) return;
+
+        BlockEncodeEvent event = new BlockEncodeEvent();
+        event.begin();
+        long[] counts = FrequencyCounter.countBytes(block, 0, size);
+        if (HuffmanEncoder.shouldStore(counts, size)) {
+            writeInt(size);
+            writeInt(size);
+            out.write(HuffmanFormat.STORED);
+            out.write(block, 0, size);
+            if (event.shouldCommit()) {
+                event.set(size, size, 1);
+                event.stored = true;
+                event.commit();
+            }
+            size = 0;
+            return;
+        }
+        CanonicalCode code = CanonicalCode.fromCounts(counts, builder);
+        encoded.reset();
+        code.writeHeader(bits);
+        HuffmanEncoder.encode(block, 0, size, code.getCodeTable(), bits);
+        bits.flush();
+
+        writeInt(size);
+        writeInt(encoded.size());
+        out.write(HuffmanFormat.CANONICAL);
+        encoded.writeTo(out);
+        if (event.shouldCommit()) {
+            event.set(size, size, HuffmanEvent.ratio(encoded.size(), size));
+            event.commit();
+        }
+        size = 0;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
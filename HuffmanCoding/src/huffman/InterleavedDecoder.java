@@ -0,0 +1,168 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class decodes INTERLEAVED files, where every block is split into STREAMS
+ * sub-streams: symbol i of a block is coded in sub-stream i % STREAMS, and each
+ * sub-stream starts on a byte boundary with its own bit reader. With one stream,
+ * where the next code starts isn't known until the current one is decoded; with
+ * four, the four lookups of a round don't depend on each other, so the CPU can
+ * keep them all in flight at once.
+ *
+ * Layout after the marker and format bytes and the canonical code lengths, for
+ * every block: its symbol count and the byte length of each sub-stream as 32 bit
+ * numbers, then the sub-streams one after another. A block with 0 symbols ends
+ * the file. A symbol count with HuffmanFormat.STORED_BLOCK set is followed by the
+ * block's raw bytes instead, with no sub-stream lengths.
+ */
+public class InterleavedDecoder {
+    public static final int STREAMS = 4;
+    public static final int DEFAULT_BLOCK_SYMBOLS = 1 << 16;
+
+    private final FlatTree tree;
+    private final int lookupBits;
+
+    // Entry layout: bits 0-7 code length (0 if the code is longer than the table), bits 8-15 the symbol
+    private final int[] table;
+
+    /**
+     * Builds a single symbol lookup table straight from the canonical codes.
+     */
+    public InterleavedDecoder(CanonicalCode code) {
+        this.tree = FlatTree.fromTree(code.toTree());
+        this.lookupBits = TableDecoder.lookupBitsFor(code.getMaxLength());
+        this.table = new int[1 << lookupBits];
+
+        CodeTable codes = code.getCodeTable();
+        for (int symbol = 0; symbol < codes.size(); symbol++) {
+            long packed = codes.packed(symbol);
+            int length = CodeTable.length(packed);
+            if (length == 0 || length > lookupBits) continue;
+
+            // Every index starting with the code resolves to it
+            int first = (int) CodeTable.code(packed) << (lookupBits - length);
+            int last = first + (1 << (lookupBits - length));
+            for (int index = first; index < last; index++) {
+                table[index] = (symbol << 8) | length;
+            }
+        }
+    }
+
+    /**
+     * Reads the code lengths of an INTERLEAVED file.
+     *
+     * @param in The encoded stream, positioned right after the format byte
+     */
+    public static InterleavedDecoder readHeader(BitInputStream in) throws IOException {
+        return new InterleavedDecoder(CanonicalCode.readHeader(in));
+    }
+
+    /**
+     * Decodes every block in order and writes the symbols to out.
+     *
+     * @param in The encoded stream, positioned right after the code lengths
+     */
+    public void decodeAll(BitInputStream in, OutputStream out) throws IOException {
+        byte[] encoded = new byte[0];
+        byte[] decoded = new byte[0];
+        int[] lengths = new int[STREAMS];
+
+        while (true) {
+            int count = readInt(in);
+            if (count == 0) break;
+            if ((count & HuffmanFormat.STORED_BLOCK) != 0) {
+                count &= ~HuffmanFormat.STORED_BLOCK;
+                if (decoded.length < count) decoded = new byte[count];
+                copyStored(in, decoded, count);
+                out.write(decoded, 0, count);
+                continue;
+            }
+
+            long total = 0;
+            for (int s = 0; s < STREAMS; s++) {
+                lengths[s] = readInt(in);
+                total += lengths[s];
+            }
+            if (total > Integer.MAX_VALUE) throw new IOException("Block is too large");
+
+            if (encoded.length < total) encoded = new byte[(int) total];
+            if (decoded.length < count) decoded = new byte[count];
+            in.readFully(encoded, 0, (int) total);
+            decodeBlock(encoded, lengths, decoded, count);
+            out.write(decoded, 0, count);
+        }
+    }
+
+    /**
+     * Decodes one block whose sub-streams lie one after another at the start of encoded.
+     *
+     * @param encoded The sub-streams of the block
+     * @param lengths Byte length of every sub-stream
+     * @param out Where to store the decoded symbols, from index 0
+     * @param count Number of symbols in the block
+     */
+    public void decodeBlock(byte[] encoded, int[] lengths, byte[] out, int count) throws IOException {
+        BlockDecodeEvent event = new BlockDecodeEvent();
+        event.begin();
+        BitInputStream s0 = new BitInputStream(encoded, 0, lengths[0]);
+        BitInputStream s1 = new BitInputStream(encoded, lengths[0], lengths[1]);
+        BitInputStream s2 = new BitInputStream(encoded, lengths[0] + lengths[1], lengths[2]);
+        BitInputStream s3 = new BitInputStream(encoded, lengths[0] + lengths[1] + lengths[2], lengths[3]);
+
+        // Whole rounds: one symbol from each sub-stream, none waiting on another
+        int i = 0;
+        for (int rounds = count & ~(STREAMS - 1); i < rounds; i += STREAMS) {
+            out[i] = next(s0);
+            out[i + 1] = next(s1);
+            out[i + 2] = next(s2);
+            out[i + 3] = next(s3);
+        }
+
+        // The last partial round
+        BitInputStream[] streams = { s0, s1, s2, s3 };
+        for (; i < count; i++) {
+            out[i] = next(streams[i & (STREAMS - 1)]);
+        }
+
+        if (event.shouldCommit()) {
+            long length = (long) lengths[0] + lengths[1] + lengths[2] + lengths[3];
+            event.set(length, count, HuffmanEvent.ratio(length, count));
+            event.commit();
+        }
+    }
+
+    // Reads a stored block straight into out
+    private static void copyStored(BitInputStream in, byte[] out, int count) throws IOException {
+        BlockDecodeEvent event = new BlockDecodeEvent();
+        event.begin();
+        in.readFully(out, 0, count);
+        if (event.shouldCommit()) {
+            event.set(count, count, 1);
+            event.stored = true;
+            event.commit();
+        }
+    }
+
+    // Decodes one symbol from in
+    private byte next(BitInputStream in) throws IOException {
+        int available = in.fill();
+        int entry = table[(int) in.peek(lookupBits)];
+        int length = entry & 0xFF;
+        if (length != 0 && length <= available) {
+            in.skip(length);
+            return (byte) (entry >>> 8);
+        }
+
+        // Code longer than the table, or the sub-stream ran short: walk the tree
+        int symbol = tree.walk(0, in);
+        if (symbol < 0) throw new IOException("Sub-stream ended early");
+        return (byte) symbol;
+    }
+
+    private static int readInt(BitInputStream in) throws IOException {
+        if (in.fill() < 32) throw new IOException("Truncated block header");
+        return (int) in.readBits(32);
+    }
+}
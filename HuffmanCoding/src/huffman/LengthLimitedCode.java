@@ -0,0 +1,145 @@
+package huffman;
+
+/**
+ * This class builds the best prefix code whose codes are no longer than a given
+ * number of bits, using the package-merge algorithm. Plain huffman codes can get
+ * as long as the alphabet on skewed inputs; capping them (at 11, 12 or 15 bits for
+ * example) lets TableDecoder resolve every symbol with a single lookup, at the cost
+ * of slightly longer output, which getOverhead reports.
+ *
+ * Package-merge: the list for the deepest level is the leaves sorted by weight.
+ * Each level above it merges the leaves with packages made by pairing up adjacent
+ * items of the level below. Taking the 2n - 2 smallest items of the top list, a
+ * symbol's code length is the number of levels at which its leaf gets selected.
+ */
+public class LengthLimitedCode {
+    private final int maxLength;
+    private final int[] lengths;
+    private final long bits;
+    private final long unlimitedBits;
+
+    /**
+     * @param counts Histogram indexed by symbol, at most 256 symbols
+     * @param maxLength Longest code allowed, at least enough bits to give every symbol a code
+     */
+    public LengthLimitedCode(long[] counts, int maxLength) {
+        this(counts, maxLength, new ArrayTreeBuilder(counts.length));
+    }
+
+    /**
+     * Same as LengthLimitedCode(counts, maxLength), with the leaves sorted in a
+     * builder the caller keeps instead of a new one.
+     *
+     * @param builder A builder for at least counts.length symbols
+     */
+    public LengthLimitedCode(long[] counts, int maxLength, ArrayTreeBuilder builder) {
+        if (counts.length < 2 || counts.length > builder.getAlphabetSize()) {
+            throw new IllegalArgumentException("Histogram must have between 2 and " + builder.getAlphabetSize()
+                    + " symbols");
+        }
+        if (maxLength < 1 || maxLength > CodeTable.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("maxLength must be between 1 and " + CodeTable.MAX_CODE_LENGTH);
+        }
+        this.maxLength = maxLength;
+
+        // Leaves in increasing weight, with the same padding for fewer than 2 symbols as the tree builders
+        builder.build(counts);
+        int n = builder.getLeafCount();
+        if (maxLength < 32 && (1L << maxLength) < n) {
+            throw new IllegalArgumentException(n + " symbols don't fit in codes of " + maxLength + " bits");
+        }
+
+        long[] leaves = new long[n];
+        for (int i = 0; i < n; i++) leaves[i] = builder.getWeight(i);
+
+        int[] leafLengths = packageMerge(leaves, maxLength);
+        lengths = new int[counts.length];
+        int[] unlimited = new int[builder.getAlphabetSize()];
+        builder.codeLengths(unlimited);
+        long b = 0, u = 0;
+        for (int i = 0; i < n; i++) {
+            int symbol = builder.getSymbol(i);
+            lengths[symbol] = leafLengths[i];
+            b += counts[symbol] * leafLengths[i];
+            u += counts[symbol] * unlimited[symbol];
+        }
+        bits = b;
+        unlimitedBits = u;
+    }
+
+    /**
+     * Runs package-merge over leaf weights sorted in increasing order.
+     *
+     * @return The code length of every leaf, in the same order
+     */
+    static int[] packageMerge(long[] leaves, int maxLength) {
+        int n = leaves.length;
+        int[] lengths = new int[n];
+
+        // No level can select more than 2n - 2 items, so deeper levels are never reached
+        int levels = Math.min(maxLength, n - 1);
+
+        // For every level, the merged weights and how many leaves are among the first i items
+        long[][] weights = new long[levels + 1][];
+        int[][] leavesBefore = new int[levels + 1][];
+
+        weights[levels] = leaves.clone();
+        leavesBefore[levels] = new int[n + 1];
+        for (int i = 0; i <= n; i++) leavesBefore[levels][i] = i;
+
+        for (int level = levels - 1; level >= 1; level--) {
+            long[] below = weights[level + 1];
+            int packages = below.length / 2;
+            long[] merged = new long[n + packages];
+            int[] before = new int[n + packages + 1];
+
+            // Merge leaves with packages of adjacent pairs, leaves first on a tie
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long packWeight = pack < packages ? below[2 * pack] + below[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < n && leaves[leaf] <= packWeight) {
+                    merged[i] = leaves[leaf++];
+                }
+                else {
+                    merged[i] = packWeight;
+                    pack++;
+                }
+                before[i + 1] = leaf;
+            }
+            weights[level] = merged;
+            leavesBefore[level] = before;
+        }
+
+        // Select the 2n - 2 smallest items of the top level and follow packages down
+        int selected = 2 * n - 2;
+        for (int level = 1; level <= levels && selected > 0; level++) {
+            int leafCount = leavesBefore[level][selected];
+            for (int i = 0; i < leafCount; i++) lengths[i]++;
+            selected = 2 * (selected - leafCount);
+        }
+        return lengths;
+    }
+
+    public int getMaxLength() { return maxLength; }
+
+    // Code length of every symbol, 0 for symbols not in the code
+    public int[] getLengths() { return lengths.clone(); }
+
+    public CanonicalCode getCode() { return new CanonicalCode(lengths); }
+
+    // Bits this code needs for the histogram it was built from
+    public long getBits() { return bits; }
+
+    // Bits an unlimited huffman code needs for the same histogram
+    public long getUnlimitedBits() { return unlimitedBits; }
+
+    // Extra bits as a fraction of the unlimited code's bits, 0 when the limit costs nothing
+    public double getOverhead() {
+        return unlimitedBits == 0 ? 0 : (double) (bits - unlimitedBits) / unlimitedBits;
+    }
+
+    public String toString() {
+        return String.format("Codes limited to %d bits: %d bits vs %d unlimited (+%.3f%%)",
+                maxLength, bits, unlimitedBits, 100 * getOverhead());
+    }
+}
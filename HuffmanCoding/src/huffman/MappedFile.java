@@ -0,0 +1,87 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads a file through memory mapped regions instead of copying it onto
+ * the heap. A single MappedByteBuffer can cover at most 2 GB, so the file is walked
+ * one region at a time, and files of any size can be counted, encoded and decoded
+ * with a bounded heap.
+ */
+public class MappedFile implements Closeable {
+    public static final long DEFAULT_REGION_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+
+    public MappedFile(String filename) throws IOException { this(filename, DEFAULT_REGION_SIZE); }
+
+    /**
+     * @param filename The file to map
+     * @param regionSize Number of bytes to map at a time, at most Integer.MAX_VALUE
+     */
+    public MappedFile(String filename, long regionSize) throws IOException {
+        if (regionSize < 1 || regionSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("regionSize must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    public long size() { return size; }
+    public long getRegionSize() { return regionSize; }
+
+    /**
+     * Maps the region starting at position, which is regionSize bytes long or
+     * shorter at the end of the file.
+     */
+    public MappedByteBuffer map(long position) throws IOException {
+        long length = Math.min(regionSize, size - position);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Returns a stream over the whole file that maps one region at a time. Closing
+     * the stream does not close this file.
+     */
+    public InputStream openStream() {
+        return new InputStream() {
+            private MappedByteBuffer region;
+            private long next;
+
+            public int read() throws IOException {
+                if (!nextRegion()) return -1;
+                return region.get() & 0xFF;
+            }
+
+            public int read(byte[] b, int offset, int length) throws IOException {
+                if (length == 0) return 0;
+                if (!nextRegion()) return -1;
+                int n = Math.min(length, region.remaining());
+                region.get(b, offset, n);
+                return n;
+            }
+
+            // Makes sure region has bytes left, returns false at the end of the file
+            private boolean nextRegion() throws IOException {
+                if (region != null && region.hasRemaining()) return true;
+                if (next >= size) return false;
+                region = map(next);
+                next += region.capacity();
+                return true;
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,199 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class encodes raw bytes on every core. The input is split into blocks of a
+ * fixed size, the histogram of every block is counted in parallel and merged into
+ * one canonical code, and then the blocks are encoded at the same time into their
+ * own buffers. The buffers are written one after another behind a BlockIndex, as a
+ * BLOCKED file. Blocks that HuffmanEncoder.shouldStoreBlock picks are written as
+ * they are.
+ *
+ * Files are split straight from their memory mapped regions, and the block
+ * histograms give every block's exact size before any block is encoded, so the
+ * index is written first and only a few blocks per thread are ever held encoded.
+ * Files larger than 2 GB are encoded with a bounded heap.
+ */
+public class ParallelEncoder {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final int blockSize;
+    private final ForkJoinPool pool;
+
+    // Builds the code of every input, one at a time
+    private final ArrayTreeBuilder builder = new ArrayTreeBuilder(FrequencyCounter.BYTE_ALPHABET);
+
+    public ParallelEncoder() { this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool()); }
+
+    public ParallelEncoder(int blockSize) { this(blockSize, ForkJoinPool.commonPool()); }
+
+    /**
+     * @param blockSize Number of input bytes per block
+     * @param pool The pool to run counting and encoding on
+     */
+    public ParallelEncoder(int blockSize, ForkJoinPool pool) {
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be positive");
+        this.blockSize = blockSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes data into a BLOCKED byte array.
+     */
+    public byte[] encode(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        try {
+            encode(data, bytes);
+        }
+        catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads inputFile as raw bytes and encodes it into encodedFile as a BLOCKED file.
+     * The input is read through memory mapped regions, so it may be larger than 2 GB.
+     */
+    public void encodeFile(String inputFile, String encodedFile) {
+        // Regions hold a whole number of blocks, so no block is split between two
+        long regionSize = Math.max(1, MappedFile.DEFAULT_REGION_SIZE / blockSize) * blockSize;
+        try (MappedFile in = new MappedFile(inputFile, regionSize);
+             OutputStream out = new FileOutputStream(encodedFile)) {
+            List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+            for (long position = 0; position < in.size(); position += in.getRegionSize()) {
+                split(in.map(position), blocks);
+            }
+            encode(blocks, out);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    /**
+     * Counts, builds the code and encodes every block in parallel, then writes the
+     * header, the index and the blocks to out.
+     */
+    public void encode(byte[] data, OutputStream out) throws IOException {
+        List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+        split(ByteBuffer.wrap(data), blocks);
+        encode(blocks, out);
+    }
+
+    // Cuts region into blocks of blockSize bytes, the last one possibly shorter
+    private void split(ByteBuffer region, List<ByteBuffer> blocks) {
+        for (int offset = 0; offset < region.limit(); offset += blockSize) {
+            blocks.add(region.slice(offset, Math.min(blockSize, region.limit() - offset)));
+        }
+    }
+
+    private void encode(List<ByteBuffer> blocks, OutputStream out) throws IOException {
+        int count = blocks.size();
+        List<ForkJoinTask<long[]>> counting = new ArrayList<ForkJoinTask<long[]>>(count);
+        for (ByteBuffer block : blocks) {
+            counting.add(pool.submit(() -> {
+                long[] blockCounts = new long[FrequencyCounter.BYTE_ALPHABET];
+                FrequencyCounter.addBytes(blockCounts, block);
+                return blockCounts;
+            }));
+        }
+
+        long[][] blockCounts = new long[count][];
+        long[] counts = new long[FrequencyCounter.BYTE_ALPHABET];
+        for (int i = 0; i < count; i++) {
+            blockCounts[i] = counting.get(i).join();
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] += blockCounts[i][b];
+            }
+        }
+        CanonicalCode code;
+        synchronized (builder) {
+            code = CanonicalCode.fromCounts(counts, builder);
+        }
+        CodeTable codes = code.getCodeTable();
+
+        // The code lengths give every block's size without encoding it
+        int[] symbolCounts = new int[count];
+        int[] byteLengths = new int[count];
+        boolean[] stored = new boolean[count];
+        boolean allStored = true;
+        for (int i = 0; i < count; i++) {
+            symbolCounts[i] = blocks.get(i).remaining();
+            long codedBytes = (codes.totalBits(blockCounts[i]) + 7) / 8;
+            stored[i] = HuffmanEncoder.shouldStoreBlock(blockCounts[i], symbolCounts[i], codedBytes);
+            byteLengths[i] = stored[i] ? symbolCounts[i] : (int) codedBytes;
+            allStored &= stored[i];
+        }
+
+        // If every block is stored the code is never used, a two symbol one stands in
+        BitOutputStream bits = new BitOutputStream(out);
+        HuffmanFormat.writeFormat(bits, HuffmanFormat.BLOCKED);
+        (allStored ? CanonicalCode.fromCounts(new long[2]) : code).writeHeader(bits);
+        new BlockIndex(symbolCounts, byteLengths, stored).write(bits);
+        bits.flush();
+
+        // Encode at most two blocks per thread ahead of the one being written
+        int ahead = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<ForkJoinTask<byte[]>>();
+        byte[] copy = new byte[1 << 16];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            while (next < count && pending.size() < ahead) {
+                int block = next++;
+                pending.add(pool.submit(() -> stored[block] ? null
+                        : encodeBlock(blocks.get(block), codes, byteLengths[block])));
+            }
+            byte[] encoded = pending.poll().join();
+            if (encoded != null) out.write(encoded);
+            else write(blocks.get(i), out, copy);
+        }
+        out.flush();
+    }
+
+    // Encodes one block into its own buffer, the last byte padded with zeroes
+    static byte[] encodeBlock(ByteBuffer block, CodeTable codes, int byteLength) {
+        BlockEncodeEvent event = new BlockEncodeEvent();
+        event.begin();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(byteLength);
+        try (BitOutputStream out = new BitOutputStream(bytes)) {
+            HuffmanEncoder.encode(block, codes, out);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (event.shouldCommit()) {
+            event.set(block.remaining(), block.remaining(), HuffmanEvent.ratio(bytes.size(), block.remaining()));
+            event.commit();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Writes a stored block through copy, since a mapped block has no array to write from
+    private static void write(ByteBuffer block, OutputStream out, byte[] copy) throws IOException {
+        BlockEncodeEvent event = new BlockEncodeEvent();
+        event.begin();
+        ByteBuffer source = block.duplicate();
+        while (source.hasRemaining()) {
+            int n = Math.min(copy.length, source.remaining());
+            source.get(copy, 0, n);
+            out.write(copy, 0, n);
+        }
+        if (event.shouldCommit()) {
+            event.set(block.remaining(), block.remaining(), 1);
+            event.stored = true;
+            event.commit();
+        }
+    }
+}
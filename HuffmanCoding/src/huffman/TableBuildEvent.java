@@ -0,0 +1,18 @@
+package huffman;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Building the lookup table of a TableDecoder. The block size is the size of the
+ * table in bytes, the symbol count is how many symbols its entries hold in total,
+ * and the ratio is the average number of symbols one lookup decodes.
+ */
+@Name("huffman.TableBuild")
+@Label("Table Build")
+@Description("Decoding lookup table built from a tree")
+public class TableBuildEvent extends HuffmanEvent {
+    @Label("Lookup Bits")
+    int lookupBits;
+}
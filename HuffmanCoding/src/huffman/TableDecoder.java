@@ -0,0 +1,185 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class decodes Huffman bits with a lookup table instead of walking the tree
+ * one bit at a time. The next lookupBits bits of input index straight into the
+ * table, and each entry holds every whole symbol those bits decode to (up to 3)
+ * and how many bits they used. Codes longer than the table width resolve the first
+ * lookupBits bits from the table and finish with a walk down a FlatTree copy of
+ * the tree.
+ */
+public class TableDecoder {
+    public static final int DEFAULT_LOOKUP_BITS = 10;
+
+    // Widest table built just so every code fits in one lookup
+    public static final int MAX_SINGLE_LOOKUP_BITS = 12;
+
+    private static final int MAX_SYMBOLS_PER_ENTRY = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FlatTree tree;
+    private final int lookupBits;
+
+    // Entry layout: bits 0-3 bits used, bits 4-5 symbol count, bits 8-31 the symbols
+    private final int[] table;
+
+    // FlatTree node reached after lookupBits bits for entries that finish no symbol
+    private final int[] overflow;
+
+    public TableDecoder(TreeNode root) { this(root, DEFAULT_LOOKUP_BITS); }
+
+    /**
+     * Picks the table width for codes of at most maxCodeLength bits: wide enough
+     * that no code needs the tree when that costs at most a 4K entry table, and
+     * the default width otherwise.
+     */
+    public static int lookupBitsFor(int maxCodeLength) {
+        if (maxCodeLength <= MAX_SINGLE_LOOKUP_BITS) return Math.max(DEFAULT_LOOKUP_BITS, maxCodeLength);
+        return DEFAULT_LOOKUP_BITS;
+    }
+
+    /**
+     * Builds the lookup table for the given tree.
+     *
+     * @param root The root of a huffman coding tree with at least two leaves
+     * @param lookupBits How many bits to resolve per lookup, between 1 and 15
+     */
+    public TableDecoder(TreeNode root, int lookupBits) {
+        if (lookupBits < 1 || lookupBits > 15) {
+            throw new IllegalArgumentException("lookupBits must be between 1 and 15");
+        }
+        TableBuildEvent event = new TableBuildEvent();
+        event.begin();
+        this.tree = FlatTree.fromTree(root);
+        this.lookupBits = lookupBits;
+        this.table = new int[1 << lookupBits];
+        this.overflow = new int[1 << lookupBits];
+
+        for (int index = 0; index < table.length; index++) {
+            int node = 0;
+            int symbols = 0, count = 0, used = 0;
+
+            for (int b = lookupBits - 1; b >= 0 && count < MAX_SYMBOLS_PER_ENTRY; b--) {
+                node = tree.child(node, (index >>> b) & 1);
+                if (tree.isLeaf(node)) {
+                    symbols |= (tree.symbol(node) & 0xFF) << (8 + 8 * count);
+                    count++;
+                    used = lookupBits - b;
+                    node = 0;
+                }
+            }
+
+            if (count == 0) {
+                overflow[index] = node;
+                used = lookupBits;
+            }
+            table[index] = symbols | (count << 4) | used;
+        }
+
+        if (event.shouldCommit()) {
+            long stored = 0;
+            for (int entry : table) stored += (entry >>> 4) & 3;
+            event.set(4L * table.length, stored, (double) stored / table.length);
+            event.lookupBits = lookupBits;
+            event.commit();
+        }
+    }
+
+    /**
+     * Decodes every bit left in the stream and writes the symbols to out as bytes.
+     * The padding must already have been skipped.
+     *
+     * @param in The encoded bits
+     * @param out Where to write the decoded symbols
+     */
+    public void decode(BitInputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int written = 0;
+
+        while (true) {
+            int available = in.fill();
+
+            // Leave room for the largest single entry in the output buffer
+            if (written > buffer.length - MAX_SYMBOLS_PER_ENTRY) {
+                out.write(buffer, 0, written);
+                written = 0;
+            }
+
+            if (available >= lookupBits) {
+                int index = (int) in.peek(lookupBits);
+                int entry = table[index];
+                int count = (entry >>> 4) & 3;
+                in.skip(entry & 0xF);
+
+                if (count > 0) {
+                    for (int i = 0; i < count; i++) {
+                        buffer[written++] = (byte) (entry >>> (8 + 8 * i));
+                    }
+                    continue;
+                }
+
+                // Code longer than the table, finish it on the tree
+                int symbol = tree.walk(overflow[index], in);
+                if (symbol < 0) break;
+                buffer[written++] = (byte) symbol;
+            }
+            else if (available > 0) {
+                // Fewer bits left than a lookup needs, walk the tree for the tail
+                int symbol = tree.walk(0, in);
+                if (symbol < 0) break;
+                buffer[written++] = (byte) symbol;
+            }
+            else {
+                break;
+            }
+        }
+        out.write(buffer, 0, written);
+    }
+
+    /**
+     * Decodes exactly count symbols into out[offset, offset + count). Used for blocks,
+     * whose last byte may be padded with zeroes that must not be decoded.
+     *
+     * @param in The encoded bits, positioned at the first code
+     * @param out Where to store the decoded symbols
+     * @param offset First index of out to fill
+     * @param count Number of symbols to decode
+     * @return Number of symbols decoded, less than count only if the bits ran out
+     */
+    public int decode(BitInputStream in, byte[] out, int offset, int count) throws IOException {
+        int position = offset;
+        int end = offset + count;
+
+        while (position < end) {
+            int available = in.fill();
+
+            // Only use whole entries while they cannot run past the last symbol
+            if (available >= lookupBits && end - position >= MAX_SYMBOLS_PER_ENTRY) {
+                int index = (int) in.peek(lookupBits);
+                int entry = table[index];
+                int symbols = (entry >>> 4) & 3;
+                in.skip(entry & 0xF);
+
+                if (symbols > 0) {
+                    for (int i = 0; i < symbols; i++) {
+                        out[position++] = (byte) (entry >>> (8 + 8 * i));
+                    }
+                    continue;
+                }
+
+                int symbol = tree.walk(overflow[index], in);
+                if (symbol < 0) break;
+                out[position++] = (byte) symbol;
+            }
+            else {
+                int symbol = tree.walk(0, in);
+                if (symbol < 0) break;
+                out[position++] = (byte) symbol;
+            }
+        }
+        return position - offset;
+    }
+}
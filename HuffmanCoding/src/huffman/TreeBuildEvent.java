@@ -0,0 +1,36 @@
+package huffman;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Merging a histogram into a huffman coding tree. The symbol count is the number
+ * of symbols the histogram counted, and the ratio is the one the resulting code
+ * lengths give for it.
+ */
+@Name("huffman.TreeBuild")
+@Label("Tree Build")
+@Description("Huffman coding tree merged from a histogram")
+public class TreeBuildEvent extends HuffmanEvent {
+    @Label("Leaves")
+    int leaves;
+
+    @Label("Depth")
+    int depth;
+
+    // Fills the event in from the last tree the builder built and commits it
+    static void commit(TreeBuildEvent event, ArrayTreeBuilder builder) {
+        long symbols = 0, bits = 0;
+        int depth = 0;
+        for (int leaf = 0; leaf < builder.getLeafCount(); leaf++) {
+            symbols += builder.getWeight(leaf);
+            bits += builder.getWeight(leaf) * builder.getDepth(leaf);
+            depth = Math.max(depth, builder.getDepth(leaf));
+        }
+        event.set(symbols, symbols, ratio((bits + 7) / 8, symbols));
+        event.leaves = builder.getLeafCount();
+        event.depth = depth;
+        event.commit();
+    }
+}